@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A growable list of primitive int values backed by an int[], so elements are stored without boxing.
+ *
+ * Like ArrayList, an IntArrayList is not safe for use by multiple threads without external synchronization.
+ *
+ * @author mcculley
+ */
+public class IntArrayList {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] elements;
+    private int size;
+
+    /**
+     * Create a list with room for some elements before it has to grow.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public IntArrayList(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must not be negative");
+        }
+
+        elements = initialCapacity == 0 ? EMPTY : new int[initialCapacity];
+    }
+
+    /**
+     * Create an empty list.
+     */
+    public IntArrayList() {
+        this(0);
+    }
+
+    /**
+     * Create a list containing some values.
+     *
+     * @param values the values
+     * @return a new list holding values
+     */
+    public static IntArrayList of(int... values) {
+        IntArrayList list = new IntArrayList(values.length);
+        list.addAll(values);
+        return list;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " is out of bounds for size " + size);
+        }
+    }
+
+    /**
+     * Make sure the list can hold a number of elements without growing.
+     *
+     * @param capacity the number of elements
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, Math.max(8, elements.length + (elements.length >> 1))));
+        }
+    }
+
+    /**
+     * Shrink the backing array to the number of elements.
+     */
+    public void trimToSize() {
+        if (elements.length > size) {
+            elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+        }
+    }
+
+    /**
+     * @param index the index of the element
+     * @return the element at index
+     */
+    public int get(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    /**
+     * Replace an element.
+     *
+     * @param index the index of the element
+     * @param value the new value
+     * @return the previous value
+     */
+    public int set(int index, int value) {
+        checkIndex(index);
+        int old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    /**
+     * Append a value.
+     *
+     * @param value the value
+     */
+    public void add(int value) {
+        if (size == elements.length) {
+            ensureCapacity(size + 1);
+        }
+
+        elements[size++] = value;
+    }
+
+    /**
+     * Insert a value, shifting later elements up.
+     *
+     * @param index the index to insert at, which may be size()
+     * @param value the value
+     */
+    public void add(int index, int value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + " is out of bounds for size " + size);
+        }
+
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = value;
+        size++;
+    }
+
+    /**
+     * Append some values.
+     *
+     * @param values the values
+     */
+    public void addAll(int... values) {
+        ensureCapacity(size + values.length);
+        System.arraycopy(values, 0, elements, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Remove an element, shifting later elements down.
+     *
+     * @param index the index of the element
+     * @return the value that was removed
+     */
+    public int removeAt(int index) {
+        checkIndex(index);
+        int old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return the index of the first occurrence of value, or -1 if there is none
+     */
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return true if the list contains value
+     */
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Remove all elements. The backing array keeps its current capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sort the elements in ascending order.
+     */
+    public void sort() {
+        Arrays.sort(elements, 0, size);
+    }
+
+    /**
+     * Call an action on each element in order without boxing.
+     *
+     * @param action the action to call
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(elements[i]);
+        }
+    }
+
+    /**
+     * @return a new array of the elements
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    /**
+     * @return a sequential IntStream of the elements; the list must not be modified while the stream is in use
+     */
+    public IntStream stream() {
+        return Arrays.stream(elements, 0, size);
+    }
+
+    /**
+     * Get a List view of this list. The view reads and writes through to this list, boxing each element as it is read.
+     *
+     * @return a List view of this list
+     */
+    public List<Integer> asList() {
+        return new ListView();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private final class ListView extends AbstractList<Integer> implements RandomAccess {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return IntArrayList.this.get(index);
+        }
+
+        @Override
+        public Integer set(int index, Integer value) {
+            return IntArrayList.this.set(index, value);
+        }
+
+        @Override
+        public void add(int index, Integer value) {
+            IntArrayList.this.add(index, value);
+            modCount++;
+        }
+
+        @Override
+        public Integer remove(int index) {
+            Integer old = removeAt(index);
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            IntArrayList.this.clear();
+            modCount++;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * A hash set of primitive int values, using open addressing with linear probing. Values are stored unboxed in an int[], so
+ * add(), contains() and remove() do not allocate except when add() grows the table.
+ *
+ * asSet() provides a Set view that accepts any integral Number, as defined by Numbers.isIntegral().
+ *
+ * Like HashSet, an IntHashSet is not safe for use by multiple threads without external synchronization.
+ *
+ * @author mcculley
+ */
+public class IntHashSet {
+
+    private static final int MINIMUM_CAPACITY = 4;
+
+    /**
+     * Slots holding 0 are free, so 0 is tracked separately.
+     */
+    private int[] keys;
+    private boolean hasZero;
+    private int size;
+    private int mask;
+    private int maxFill;
+
+    /**
+     * Create a set with room for an expected number of values before it has to grow.
+     *
+     * @param expectedSize the expected number of values
+     */
+    public IntHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+
+        allocate(PrimitiveHashing.tableSize(expectedSize, MINIMUM_CAPACITY));
+    }
+
+    /**
+     * Create an empty set.
+     */
+    public IntHashSet() {
+        this(0);
+    }
+
+    /**
+     * Create a set containing some values.
+     *
+     * @param values the values
+     * @return a new set holding values
+     */
+    public static IntHashSet of(int... values) {
+        IntHashSet set = new IntHashSet(values.length);
+        for (int value : values) {
+            set.add(value);
+        }
+
+        return set;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        maxFill = PrimitiveHashing.maxFill(capacity);
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int slot(int key) {
+        int slot = PrimitiveHashing.home(key, mask);
+        int k;
+        while ((k = keys[slot]) != 0 && k != key) {
+            slot = PrimitiveHashing.next(slot, mask);
+        }
+
+        return slot;
+    }
+
+    /**
+     * @param value the value
+     * @return true if value is in the set
+     */
+    public boolean contains(int value) {
+        return value == 0 ? hasZero : keys[slot(value)] != 0;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value the value
+     * @return true if the set did not already contain value
+     */
+    public boolean add(int value) {
+        if (value == 0) {
+            if (hasZero) {
+                return false;
+            }
+
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = slot(value);
+        if (keys[slot] != 0) {
+            return false;
+        }
+
+        if (size + 1 >= maxFill) {
+            // Grow before inserting so that a table that cannot grow is left unchanged.
+            rehash(PrimitiveHashing.grow(keys.length));
+            slot = slot(value);
+        }
+
+        keys[slot] = value;
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @param value the value
+     * @return true if the set contained value
+     */
+    public boolean remove(int value) {
+        if (value == 0) {
+            if (!hasZero) {
+                return false;
+            }
+
+            hasZero = false;
+            size--;
+            return true;
+        }
+
+        int slot = slot(value);
+        if (keys[slot] == 0) {
+            return false;
+        }
+
+        shiftKeys(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * Close the gap left by removing the value at a slot by moving later values of the same probe sequence back, so that no
+     * tombstones are needed.
+     */
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = PrimitiveHashing.next(pos, mask);
+            int k;
+            while (true) {
+                if ((k = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    return;
+                }
+
+                if (PrimitiveHashing.canShift(last, PrimitiveHashing.home(k, mask), pos)) {
+                    break;
+                }
+
+                pos = PrimitiveHashing.next(pos, mask);
+            }
+
+            keys[last] = k;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        allocate(capacity);
+        for (int k : oldKeys) {
+            if (k != 0) {
+                keys[slot(k)] = k;
+            }
+        }
+    }
+
+    /**
+     * Remove all values. The table keeps its current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Call an action on each value without boxing.
+     *
+     * @param action the action to call
+     */
+    public void forEach(IntConsumer action) {
+        if (hasZero) {
+            action.accept(0);
+        }
+
+        for (int k : keys) {
+            if (k != 0) {
+                action.accept(k);
+            }
+        }
+    }
+
+    /**
+     * @return a new array of the values, in no particular order
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasZero) {
+            result[n++] = 0;
+        }
+
+        for (int k : keys) {
+            if (k != 0) {
+                result[n++] = k;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a Set view of this set. Any integral Number can be tested for or added, as defined by Numbers.isIntegral(); other
+     * objects are never contained in the set. Values returned by iteration are Integers. The view reads and writes through to this
+     * set, but its iterators do not support remove().
+     *
+     * @return a Set view of this set
+     */
+    public Set<Number> asSet() {
+        return new AbstractSet<Number>() {
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return PrimitiveHashing.isIntKey(o) && IntHashSet.this.contains(((Number) o).intValue());
+            }
+
+            @Override
+            public boolean add(Number value) {
+                if (!PrimitiveHashing.isIntKey(value)) {
+                    throw new IllegalArgumentException(value + " is not a valid value");
+                }
+
+                return IntHashSet.this.add(value.intValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return PrimitiveHashing.isIntKey(o) && IntHashSet.this.remove(((Number) o).intValue());
+            }
+
+            @Override
+            public void clear() {
+                IntHashSet.this.clear();
+            }
+
+            @Override
+            public Iterator<Number> iterator() {
+                return new Iterator<Number>() {
+
+                    private boolean zeroPending = hasZero;
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < keys.length && keys[from] == 0) {
+                            from++;
+                        }
+
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return zeroPending || next < keys.length;
+                    }
+
+                    @Override
+                    public Number next() {
+                        if (zeroPending) {
+                            zeroPending = false;
+                            return 0;
+                        }
+
+                        if (next >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+
+                        int value = keys[next];
+                        next = advance(next + 1);
+                        return value;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return asSet().toString();
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map from primitive int keys to Object values, using open addressing with linear probing. Keys are stored unboxed in a
+ * int[] and values in a parallel Object[], so there is no per-entry object, and get(), put(), containsKey() and remove() do not
+ * allocate except when put() grows the table.
+ *
+ * asMap() provides a Map view that accepts any integral Number as a key, in the same way as IntegralKeyMap, so it can be used
+ * from code (such as JSP) that does not know whether a key is an Integer or a Long.
+ *
+ * Like HashMap, an IntObjectHashMap is not safe for use by multiple threads without external synchronization.
+ *
+ * @author mcculley
+ */
+public class IntObjectHashMap<V> {
+
+    private static final int MINIMUM_CAPACITY = 4;
+
+    /**
+     * Slots holding a key of 0 are free, so a 0 key is stored separately.
+     */
+    private int[] keys;
+    private Object[] values;
+    private boolean hasZeroKey;
+    private V zeroValue;
+    private int size;
+    private int mask;
+    private int maxFill;
+
+    /**
+     * Create a map with room for an expected number of entries before it has to grow.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    public IntObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+
+        allocate(PrimitiveHashing.tableSize(expectedSize, MINIMUM_CAPACITY));
+    }
+
+    /**
+     * Create an empty map.
+     */
+    public IntObjectHashMap() {
+        this(0);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        maxFill = PrimitiveHashing.maxFill(capacity);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Find the slot holding a key, or the free slot where it would go.
+     */
+    private int slot(int key) {
+        int slot = PrimitiveHashing.home(key, mask);
+        int k;
+        while ((k = keys[slot]) != 0 && k != key) {
+            slot = PrimitiveHashing.next(slot, mask);
+        }
+
+        return slot;
+    }
+
+    /**
+     * @param key the key
+     * @return the value for key, or null if there is none
+     */
+    public V get(int key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+
+        int slot = slot(key);
+        return keys[slot] == 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @param key the key
+     * @param defaultValue the value to return if there is no entry for key
+     * @return the value for key, or defaultValue if there is no entry
+     */
+    public V getOrDefault(int key, V defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+
+        int slot = slot(key);
+        return keys[slot] == 0 ? defaultValue : (V) values[slot];
+    }
+
+    /**
+     * @param key the key
+     * @return true if there is an entry for key
+     */
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : keys[slot(key)] != 0;
+    }
+
+    /**
+     * Associate a value with a key.
+     *
+     * @param key the key
+     * @param value the value, which may be null
+     * @return the previous value for key, or null if there was none
+     */
+    public V put(int key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+
+            zeroValue = value;
+            return old;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] != 0) {
+            V old = (V) values[slot];
+            values[slot] = value;
+            return old;
+        }
+
+        if (size + 1 >= maxFill) {
+            // Grow before inserting so that a table that cannot grow is left unchanged.
+            rehash(PrimitiveHashing.grow(keys.length));
+            slot = slot(key);
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        return null;
+    }
+
+    /**
+     * Remove the entry for a key.
+     *
+     * @param key the key
+     * @return the value that was associated with key, or null if there was none
+     */
+    public V remove(int key) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                size--;
+            }
+
+            return old;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            return null;
+        }
+
+        V old = (V) values[slot];
+        shiftKeys(slot);
+        size--;
+        return old;
+    }
+
+    /**
+     * Close the gap left by removing the entry at a slot by moving later entries of the same probe sequence back, so that no
+     * tombstones are needed.
+     */
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = PrimitiveHashing.next(pos, mask);
+            int k;
+            while (true) {
+                if ((k = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    values[last] = null;
+                    return;
+                }
+
+                if (PrimitiveHashing.canShift(last, PrimitiveHashing.home(k, mask), pos)) {
+                    break;
+                }
+
+                pos = PrimitiveHashing.next(pos, mask);
+            }
+
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != 0) {
+                int slot = slot(k);
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Remove all entries. The table keeps its current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Call an action on each entry without boxing the keys.
+     *
+     * @param action the action to call
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            int k = keys[i];
+            if (k != 0) {
+                action.accept(k, (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a new array of the keys, in no particular order
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasZeroKey) {
+            result[n++] = 0;
+        }
+
+        for (int k : keys) {
+            if (k != 0) {
+                result[n++] = k;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a Map view of this map. Any integral Number can be used as a key, as defined by Numbers.isIntegral(); other keys are
+     * never contained in the map. Keys returned by iteration are Integers. The view reads and writes through to this map, but its
+     * iterators do not support remove().
+     *
+     * @return a Map view of this map
+     */
+    public Map<Number, V> asMap() {
+        return new AbstractMap<Number, V>() {
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return PrimitiveHashing.isIntKey(key) && IntObjectHashMap.this.containsKey(((Number) key).intValue());
+            }
+
+            @Override
+            public V get(Object key) {
+                return PrimitiveHashing.isIntKey(key) ? IntObjectHashMap.this.get(((Number) key).intValue()) : null;
+            }
+
+            @Override
+            public V put(Number key, V value) {
+                if (!PrimitiveHashing.isIntKey(key)) {
+                    throw new IllegalArgumentException(key + " is not a valid key");
+                }
+
+                return IntObjectHashMap.this.put(key.intValue(), value);
+            }
+
+            @Override
+            public V remove(Object key) {
+                return PrimitiveHashing.isIntKey(key) ? IntObjectHashMap.this.remove(((Number) key).intValue()) : null;
+            }
+
+            @Override
+            public void clear() {
+                IntObjectHashMap.this.clear();
+            }
+
+            @Override
+            public Set<Entry<Number, V>> entrySet() {
+                return new AbstractSet<Entry<Number, V>>() {
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<Entry<Number, V>> iterator() {
+                        return new Iterator<Entry<Number, V>>() {
+
+                            private boolean zeroPending = hasZeroKey;
+                            private int next = advance(0);
+
+                            private int advance(int from) {
+                                while (from < keys.length && keys[from] == 0) {
+                                    from++;
+                                }
+
+                                return from;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return zeroPending || next < keys.length;
+                            }
+
+                            @Override
+                            public Entry<Number, V> next() {
+                                if (zeroPending) {
+                                    zeroPending = false;
+                                    return new SimpleImmutableEntry<Number, V>((Integer) 0, zeroValue);
+                                }
+
+                                if (next >= keys.length) {
+                                    throw new NoSuchElementException();
+                                }
+
+                                Entry<Number, V> entry = new SimpleImmutableEntry<Number, V>(keys[next], (V) values[next]);
+                                next = advance(next + 1);
+                                return entry;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    /**
+     * An action on an entry of an IntObjectHashMap.
+     */
+    public interface EntryConsumer<V> {
+
+        /**
+         * @param key the key of the entry
+         * @param value the value of the entry
+         */
+        void accept(int key, V value);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+
+/**
+ * A read-only Map view of a function over integers, for exposing lookups to code (such as the JSP expression language) that may
+ * use a boxed Integer, Long or other integral Number as a key. Any key for which Numbers.isIntegral() is true is normalized to a
+ * primitive long before the domain test and the function are applied, so an Integer and a Long with the same value find the same
+ * value. Keys that are not integral Numbers are not contained in the map.
+ *
+ * The map can optionally memoize the function in a fixed-size, direct-mapped cache keyed by the primitive long. A lookup that hits
+ * the cache does not allocate. The cache is safe for concurrent use; colliding keys simply replace each other.
+ *
+ * The map is conceptually infinite, so it cannot be iterated: entrySet() throws UnsupportedOperationException and size() returns
+ * Integer.MAX_VALUE. Maps are compared by identity.
+ *
+ * @author mcculley
+ */
+public class IntegralKeyMap<V> extends AbstractMap<Number, V> {
+
+    private static final LongPredicate positive = new LongPredicate() {
+        @Override
+        public boolean test(long value) {
+            return value > 0;
+        }
+    };
+
+    private final LongPredicate domain;
+    private final LongFunction<? extends V> function;
+    private final CacheEntry<V>[] cache;
+    private final int mask;
+
+    /**
+     * An immutable cache entry. As its fields are final, an entry read from the cache array by another thread is always complete.
+     */
+    private static final class CacheEntry<V> {
+
+        private final long key;
+        private final V value;
+
+        private CacheEntry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Create an IntegralKeyMap.
+     *
+     * @param domain a predicate that is true for the keys contained in the map
+     * @param function the function that computes the value for a key
+     * @param cacheSize the number of values to memoize, rounded up to a power of two; 0 to call function on every lookup
+     */
+    public IntegralKeyMap(LongPredicate domain, LongFunction<? extends V> function, int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize must not be negative");
+        }
+
+        this.domain = domain;
+        this.function = function;
+        if (cacheSize == 0) {
+            this.cache = null;
+            this.mask = 0;
+        } else {
+            int size = cacheSize == 1 ? 1 : Integer.highestOneBit(cacheSize - 1) << 1;
+            this.cache = new CacheEntry[size];
+            this.mask = size - 1;
+        }
+    }
+
+    /**
+     * Create an IntegralKeyMap that does not memoize.
+     *
+     * @param domain a predicate that is true for the keys contained in the map
+     * @param function the function that computes the value for a key
+     */
+    public IntegralKeyMap(LongPredicate domain, LongFunction<? extends V> function) {
+        this(domain, function, 0);
+    }
+
+    /**
+     * Create an IntegralKeyMap over all positive integers. This replaces Maps.asMap(Numbers.positiveIntegers, function).
+     *
+     * @param <V> the type of the values
+     * @param function the function that computes the value for a key
+     * @param cacheSize the number of values to memoize; 0 to call function on every lookup
+     * @return a new IntegralKeyMap
+     */
+    public static <V> IntegralKeyMap<V> positive(LongFunction<? extends V> function, int cacheSize) {
+        return new IntegralKeyMap<>(positive, function, cacheSize);
+    }
+
+    /**
+     * Look up a value by a primitive key.
+     *
+     * @param key the key
+     * @return the value of the function for key, or null if key is not in the domain
+     */
+    public V get(long key) {
+        if (!domain.test(key)) {
+            return null;
+        }
+
+        if (cache == null) {
+            return function.apply(key);
+        }
+
+        int slot = PrimitiveHashing.home(key, mask);
+        CacheEntry<V> entry = cache[slot];
+        if (entry != null && entry.key == key) {
+            return entry.value;
+        }
+
+        V value = function.apply(key);
+        cache[slot] = new CacheEntry<>(key, value);
+        return value;
+    }
+
+    /**
+     * @param key the key
+     * @return true if key is in the domain of this map
+     */
+    public boolean containsKey(long key) {
+        return domain.test(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return Numbers.isIntegral(key) ? get(((Number) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return Numbers.isIntegral(key) && domain.test(((Number) key).longValue());
+    }
+
+    /**
+     * Clear the memoized values, e.g., when the data behind the function has changed.
+     */
+    public void invalidate() {
+        if (cache != null) {
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, as the map cannot be iterated
+     */
+    @Override
+    public Set<Map.Entry<Number, V>> entrySet() {
+        throw new UnsupportedOperationException("an IntegralKeyMap cannot be iterated");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, as the map cannot be iterated
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        throw new UnsupportedOperationException("an IntegralKeyMap cannot be iterated");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return "IntegralKeyMap(" + function + ")";
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * A growable list of primitive long values backed by a long[], so elements are stored without boxing.
+ *
+ * Like ArrayList, a LongArrayList is not safe for use by multiple threads without external synchronization.
+ *
+ * @author mcculley
+ */
+public class LongArrayList {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] elements;
+    private int size;
+
+    /**
+     * Create a list with room for some elements before it has to grow.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public LongArrayList(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must not be negative");
+        }
+
+        elements = initialCapacity == 0 ? EMPTY : new long[initialCapacity];
+    }
+
+    /**
+     * Create an empty list.
+     */
+    public LongArrayList() {
+        this(0);
+    }
+
+    /**
+     * Create a list containing some values.
+     *
+     * @param values the values
+     * @return a new list holding values
+     */
+    public static LongArrayList of(long... values) {
+        LongArrayList list = new LongArrayList(values.length);
+        list.addAll(values);
+        return list;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " is out of bounds for size " + size);
+        }
+    }
+
+    /**
+     * Make sure the list can hold a number of elements without growing.
+     *
+     * @param capacity the number of elements
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, Math.max(8, elements.length + (elements.length >> 1))));
+        }
+    }
+
+    /**
+     * Shrink the backing array to the number of elements.
+     */
+    public void trimToSize() {
+        if (elements.length > size) {
+            elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+        }
+    }
+
+    /**
+     * @param index the index of the element
+     * @return the element at index
+     */
+    public long get(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    /**
+     * Replace an element.
+     *
+     * @param index the index of the element
+     * @param value the new value
+     * @return the previous value
+     */
+    public long set(int index, long value) {
+        checkIndex(index);
+        long old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    /**
+     * Append a value.
+     *
+     * @param value the value
+     */
+    public void add(long value) {
+        if (size == elements.length) {
+            ensureCapacity(size + 1);
+        }
+
+        elements[size++] = value;
+    }
+
+    /**
+     * Insert a value, shifting later elements up.
+     *
+     * @param index the index to insert at, which may be size()
+     * @param value the value
+     */
+    public void add(int index, long value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + " is out of bounds for size " + size);
+        }
+
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = value;
+        size++;
+    }
+
+    /**
+     * Append some values.
+     *
+     * @param values the values
+     */
+    public void addAll(long... values) {
+        ensureCapacity(size + values.length);
+        System.arraycopy(values, 0, elements, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Remove an element, shifting later elements down.
+     *
+     * @param index the index of the element
+     * @return the value that was removed
+     */
+    public long removeAt(int index) {
+        checkIndex(index);
+        long old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return the index of the first occurrence of value, or -1 if there is none
+     */
+    public int indexOf(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return true if the list contains value
+     */
+    public boolean contains(long value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Remove all elements. The backing array keeps its current capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sort the elements in ascending order.
+     */
+    public void sort() {
+        Arrays.sort(elements, 0, size);
+    }
+
+    /**
+     * Call an action on each element in order without boxing.
+     *
+     * @param action the action to call
+     */
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(elements[i]);
+        }
+    }
+
+    /**
+     * @return a new array of the elements
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    /**
+     * @return a sequential LongStream of the elements; the list must not be modified while the stream is in use
+     */
+    public LongStream stream() {
+        return Arrays.stream(elements, 0, size);
+    }
+
+    /**
+     * Get a List view of this list. The view reads and writes through to this list, boxing each element as it is read.
+     *
+     * @return a List view of this list
+     */
+    public List<Long> asList() {
+        return new ListView();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private final class ListView extends AbstractList<Long> implements RandomAccess {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Long get(int index) {
+            return LongArrayList.this.get(index);
+        }
+
+        @Override
+        public Long set(int index, Long value) {
+            return LongArrayList.this.set(index, value);
+        }
+
+        @Override
+        public void add(int index, Long value) {
+            LongArrayList.this.add(index, value);
+            modCount++;
+        }
+
+        @Override
+        public Long remove(int index) {
+            Long old = removeAt(index);
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            LongArrayList.this.clear();
+            modCount++;
+        }
+    }
+}
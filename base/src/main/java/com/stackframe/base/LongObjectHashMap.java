@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map from primitive long keys to Object values, using open addressing with linear probing. Keys are stored unboxed in a
+ * long[] and values in a parallel Object[], so there is no per-entry object, and get(), put(), containsKey() and remove() do not
+ * allocate except when put() grows the table.
+ *
+ * asMap() provides a Map view that accepts any integral Number as a key, in the same way as IntegralKeyMap, so it can be used
+ * from code (such as JSP) that does not know whether a key is an Integer or a Long.
+ *
+ * Like HashMap, a LongObjectHashMap is not safe for use by multiple threads without external synchronization.
+ *
+ * @author mcculley
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int MINIMUM_CAPACITY = 4;
+
+    /**
+     * Slots holding a key of 0 are free, so a 0 key is stored separately.
+     */
+    private long[] keys;
+    private Object[] values;
+    private boolean hasZeroKey;
+    private V zeroValue;
+    private int size;
+    private int mask;
+    private int maxFill;
+
+    /**
+     * Create a map with room for an expected number of entries before it has to grow.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    public LongObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+
+        allocate(PrimitiveHashing.tableSize(expectedSize, MINIMUM_CAPACITY));
+    }
+
+    /**
+     * Create an empty map.
+     */
+    public LongObjectHashMap() {
+        this(0);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        maxFill = PrimitiveHashing.maxFill(capacity);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Find the slot holding a key, or the free slot where it would go.
+     */
+    private int slot(long key) {
+        int slot = PrimitiveHashing.home(key, mask);
+        long k;
+        while ((k = keys[slot]) != 0 && k != key) {
+            slot = PrimitiveHashing.next(slot, mask);
+        }
+
+        return slot;
+    }
+
+    /**
+     * @param key the key
+     * @return the value for key, or null if there is none
+     */
+    public V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+
+        int slot = slot(key);
+        return keys[slot] == 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @param key the key
+     * @param defaultValue the value to return if there is no entry for key
+     * @return the value for key, or defaultValue if there is no entry
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+
+        int slot = slot(key);
+        return keys[slot] == 0 ? defaultValue : (V) values[slot];
+    }
+
+    /**
+     * @param key the key
+     * @return true if there is an entry for key
+     */
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : keys[slot(key)] != 0;
+    }
+
+    /**
+     * Associate a value with a key.
+     *
+     * @param key the key
+     * @param value the value, which may be null
+     * @return the previous value for key, or null if there was none
+     */
+    public V put(long key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+
+            zeroValue = value;
+            return old;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] != 0) {
+            V old = (V) values[slot];
+            values[slot] = value;
+            return old;
+        }
+
+        if (size + 1 >= maxFill) {
+            // Grow before inserting so that a table that cannot grow is left unchanged.
+            rehash(PrimitiveHashing.grow(keys.length));
+            slot = slot(key);
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        return null;
+    }
+
+    /**
+     * Remove the entry for a key.
+     *
+     * @param key the key
+     * @return the value that was associated with key, or null if there was none
+     */
+    public V remove(long key) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                size--;
+            }
+
+            return old;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            return null;
+        }
+
+        V old = (V) values[slot];
+        shiftKeys(slot);
+        size--;
+        return old;
+    }
+
+    /**
+     * Close the gap left by removing the entry at a slot by moving later entries of the same probe sequence back, so that no
+     * tombstones are needed.
+     */
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = PrimitiveHashing.next(pos, mask);
+            long k;
+            while (true) {
+                if ((k = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    values[last] = null;
+                    return;
+                }
+
+                if (PrimitiveHashing.canShift(last, PrimitiveHashing.home(k, mask), pos)) {
+                    break;
+                }
+
+                pos = PrimitiveHashing.next(pos, mask);
+            }
+
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != 0) {
+                int slot = slot(k);
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Remove all entries. The table keeps its current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Call an action on each entry without boxing the keys.
+     *
+     * @param action the action to call
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            long k = keys[i];
+            if (k != 0) {
+                action.accept(k, (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a new array of the keys, in no particular order
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        if (hasZeroKey) {
+            result[n++] = 0;
+        }
+
+        for (long k : keys) {
+            if (k != 0) {
+                result[n++] = k;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a Map view of this map. Any integral Number can be used as a key, as defined by Numbers.isIntegral(); other keys are
+     * never contained in the map. Keys returned by iteration are Longs. The view reads and writes through to this map, but its
+     * iterators do not support remove().
+     *
+     * @return a Map view of this map
+     */
+    public Map<Number, V> asMap() {
+        return new AbstractMap<Number, V>() {
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return PrimitiveHashing.isLongKey(key) && LongObjectHashMap.this.containsKey(((Number) key).longValue());
+            }
+
+            @Override
+            public V get(Object key) {
+                return PrimitiveHashing.isLongKey(key) ? LongObjectHashMap.this.get(((Number) key).longValue()) : null;
+            }
+
+            @Override
+            public V put(Number key, V value) {
+                if (!PrimitiveHashing.isLongKey(key)) {
+                    throw new IllegalArgumentException(key + " is not a valid key");
+                }
+
+                return LongObjectHashMap.this.put(key.longValue(), value);
+            }
+
+            @Override
+            public V remove(Object key) {
+                return PrimitiveHashing.isLongKey(key) ? LongObjectHashMap.this.remove(((Number) key).longValue()) : null;
+            }
+
+            @Override
+            public void clear() {
+                LongObjectHashMap.this.clear();
+            }
+
+            @Override
+            public Set<Entry<Number, V>> entrySet() {
+                return new AbstractSet<Entry<Number, V>>() {
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<Entry<Number, V>> iterator() {
+                        return new Iterator<Entry<Number, V>>() {
+
+                            private boolean zeroPending = hasZeroKey;
+                            private int next = advance(0);
+
+                            private int advance(int from) {
+                                while (from < keys.length && keys[from] == 0) {
+                                    from++;
+                                }
+
+                                return from;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return zeroPending || next < keys.length;
+                            }
+
+                            @Override
+                            public Entry<Number, V> next() {
+                                if (zeroPending) {
+                                    zeroPending = false;
+                                    return new SimpleImmutableEntry<Number, V>((Long) 0L, zeroValue);
+                                }
+
+                                if (next >= keys.length) {
+                                    throw new NoSuchElementException();
+                                }
+
+                                Entry<Number, V> entry = new SimpleImmutableEntry<Number, V>(keys[next], (V) values[next]);
+                                next = advance(next + 1);
+                                return entry;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    /**
+     * An action on an entry of a LongObjectHashMap.
+     */
+    public interface EntryConsumer<V> {
+
+        /**
+         * @param key the key of the entry
+         * @param value the value of the entry
+         */
+        void accept(long key, V value);
+    }
+}
@@ -14,7 +14,10 @@ import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
+import java.math.BigInteger;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utilities for working with the Number abstraction.
@@ -31,6 +34,8 @@ public class Numbers {
      * don't have equality as far as a hash map is concerned, it is hard to use a Map when one doesn't know if the key will be an
      * int or a long (as happens when using the JSP expression language). Using this in conjuction with Maps.asMap(), one can build
      * a Map where any integer key can be used to invoke a Function, making it easy to expose lookups to JSP code.
+     *
+     * IntegralKeyMap does the same job without the overhead of testing membership in two sets on every lookup.
      */
     public static final Set<Number> positiveIntegers = positiveIntegers();
 
@@ -40,4 +45,21 @@ public class Numbers {
         Set<? extends Number> intKeys = ContiguousSet.create(Range.greaterThan(0), DiscreteDomain.integers());
         return Sets.union(longKeys, intKeys);
     }
+
+    /**
+     * Determine if an Object is a Number that holds an integer that fits in a long. This is true of Long, Integer, Short, Byte,
+     * AtomicLong and AtomicInteger values and of BigInteger values in the range of a long. For such a Number, longValue() returns
+     * its exact value.
+     *
+     * @param o the Object to test
+     * @return true if o is an integral Number that fits in a long
+     */
+    public static boolean isIntegral(Object o) {
+        if (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte || o instanceof AtomicLong
+                || o instanceof AtomicInteger) {
+            return true;
+        }
+
+        return o instanceof BigInteger && ((BigInteger) o).bitLength() < Long.SIZE;
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+/**
+ * Hashing and sizing shared by the open-addressing primitive collections.
+ *
+ * @author mcculley
+ */
+class PrimitiveHashing {
+
+    /**
+     * The fraction of slots that may be used before a table grows. Linear probing stays short well below this.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private PrimitiveHashing() {
+        // Inhibit construction as this is a utility class.
+    }
+
+    /**
+     * Mix the bits of a key with the golden ratio so that sequential keys spread across the table and the low bits used for the
+     * slot depend on all bits of the key.
+     */
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot where the probe sequence for key starts in a table of mask + 1 slots
+     */
+    static int home(long key, int mask) {
+        return mix(key) & mask;
+    }
+
+    static int home(int key, int mask) {
+        return mix(key) & mask;
+    }
+
+    /**
+     * @return the slot probed after slot, wrapping around from the end of the table to the start
+     */
+    static int next(int slot, int mask) {
+        return (slot + 1) & mask;
+    }
+
+    /**
+     * Decide whether an entry can be moved back into the slot left free by a removal. The entry sits at pos and its probe sequence
+     * starts at home; it can move if free lies on that sequence, which is to say cyclically between home and pos.
+     *
+     * @param free the free slot
+     * @param home the slot where the probe sequence of the entry starts
+     * @param pos the slot the entry is in
+     * @return true if the entry at pos can be moved to free
+     */
+    static boolean canShift(int free, int home, int pos) {
+        return free <= pos ? free >= home || home > pos : free >= home && home > pos;
+    }
+
+    /**
+     * @return the power of two table size that holds expectedSize entries without growing
+     */
+    static int tableSize(int expectedSize, int minimumCapacity) {
+        long needed = (long) Math.ceil(expectedSize / LOAD_FACTOR) + 1;
+        if (needed > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("too many entries: " + expectedSize);
+        }
+
+        return Math.max(minimumCapacity, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    /**
+     * @return the number of slots to grow a full table of capacity slots to
+     * @throws IllegalStateException if the table is already as large as a table can be
+     */
+    static int grow(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("table is full at " + capacity + " slots");
+        }
+
+        return capacity << 1;
+    }
+
+    /**
+     * @return the number of entries at which a table of capacity slots grows
+     */
+    static int maxFill(int capacity) {
+        return Math.min(capacity - 1, (int) Math.ceil(capacity * LOAD_FACTOR));
+    }
+
+    static boolean isLongKey(Object key) {
+        return Numbers.isIntegral(key);
+    }
+
+    static boolean isIntKey(Object key) {
+        if (!Numbers.isIntegral(key)) {
+            return false;
+        }
+
+        long value = ((Number) key).longValue();
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests for IntObjectHashMap.
+ *
+ * @author mcculley
+ */
+public class IntObjectHashMapTest extends TestCase {
+
+    /**
+     * The number of slots in a map created with an expected size of 8, which the collision tests rely on.
+     */
+    private static final int SLOTS = PrimitiveHashing.tableSize(8, 4);
+
+    private static void assertContainsExactly(IntObjectHashMap<String> map, int... keys) {
+        assertEquals(keys.length, map.size());
+        for (int k : keys) {
+            assertEquals(Integer.toString(k), map.get(k));
+        }
+    }
+
+    private static IntObjectHashMap<String> mapOf(int... keys) {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>(8);
+        for (int k : keys) {
+            assertNull(map.put(k, Integer.toString(k)));
+        }
+
+        return map;
+    }
+
+    public void testExtremeKeys() {
+        IntObjectHashMap<String> map = mapOf(Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0);
+        assertContainsExactly(map, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0);
+
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertTrue(Arrays.equals(new int[]{Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE}, keys));
+
+        for (Map.Entry<Number, String> entry : map.asMap().entrySet()) {
+            assertTrue(entry.getKey() instanceof Integer);
+            assertEquals(entry.getKey().toString(), entry.getValue());
+        }
+    }
+
+    public void testAsMapRejectsKeysOutsideTheIntRange() {
+        IntObjectHashMap<String> map = mapOf(0, -1, Integer.MIN_VALUE);
+        Map<Number, String> view = map.asMap();
+
+        // Each of these longs has the same low 32 bits as a key in the map, so truncating it would find the wrong entry.
+        assertNull(view.get(1L << 32));
+        assertNull(view.get(0xFFFFFFFFL));
+        assertNull(view.get((long) Integer.MIN_VALUE - (1L << 32)));
+        assertFalse(view.containsKey(1L << 32));
+        assertNull(view.remove(1L << 32));
+        assertEquals(3, map.size());
+
+        try {
+            view.put((long) Integer.MAX_VALUE + 1, "too big");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Longs in the range of an int are the same keys as Integers.
+        assertEquals("-2147483648", view.get((long) Integer.MIN_VALUE));
+        assertEquals("-1", view.get(-1L));
+        assertNull(view.put(5L, "five"));
+        assertEquals("five", map.get(5));
+        assertEquals("five", view.get((byte) 5));
+    }
+
+    public void testRemoveShiftsCollidingNegativeKeysBack() {
+        int[] keys = new int[4];
+        int found = 0;
+        for (int k = -1; found < keys.length; k--) {
+            if (PrimitiveHashing.home(k, SLOTS - 1) == SLOTS - 1) {
+                keys[found++] = k;
+            }
+        }
+
+        // The probe sequence starts in the last slot and wraps around to the start of the table.
+        IntObjectHashMap<String> map = mapOf(keys);
+        assertEquals(Integer.toString(keys[0]), map.remove(keys[0]));
+        assertNull(map.get(keys[0]));
+        assertContainsExactly(map, keys[1], keys[2], keys[3]);
+
+        assertEquals(Integer.toString(keys[2]), map.remove(keys[2]));
+        assertContainsExactly(map, keys[1], keys[3]);
+
+        map.put(keys[0], Integer.toString(keys[0]));
+        assertContainsExactly(map, keys[0], keys[1], keys[3]);
+    }
+
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // Keys near both ends of the int range, where arithmetic on them overflows.
+            int offset = random.nextInt(256);
+            int k = random.nextBoolean() ? Integer.MIN_VALUE + offset : Integer.MAX_VALUE - offset;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(k, i), map.put(k, i));
+            } else {
+                assertEquals(expected.remove(k), map.remove(k));
+            }
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertEquals(expected, map.asMap());
+    }
+}
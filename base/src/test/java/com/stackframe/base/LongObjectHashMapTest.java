@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests for LongObjectHashMap.
+ *
+ * @author mcculley
+ */
+public class LongObjectHashMapTest extends TestCase {
+
+    /**
+     * The number of slots in a map created with an expected size of 8, which the collision tests rely on.
+     */
+    private static final int SLOTS = PrimitiveHashing.tableSize(8, 4);
+
+    private static void assertContainsExactly(LongObjectHashMap<String> map, long... keys) {
+        assertEquals(keys.length, map.size());
+        for (long k : keys) {
+            assertEquals(Long.toString(k), map.get(k));
+        }
+    }
+
+    private static LongObjectHashMap<String> mapOf(long... keys) {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(8);
+        for (long k : keys) {
+            assertNull(map.put(k, Long.toString(k)));
+        }
+
+        return map;
+    }
+
+    public void testKeysEqualInTheirLow32Bits() {
+        // A map that truncated its keys to an int anywhere would see each of these groups as one key.
+        long[] keys = {5, 5 + (1L << 32), 5 | Long.MIN_VALUE, 1L << 32, Long.MIN_VALUE, 0xFFFFFFFFL, -1};
+        LongObjectHashMap<String> map = mapOf(keys);
+        assertContainsExactly(map, keys);
+        assertFalse(map.containsKey(5 + (2L << 32)));
+        assertNull(map.get((int) (1L << 32)));
+
+        // Keys whose low 32 bits are zero are ordinary keys, not the separately stored zero key.
+        assertFalse(map.containsKey(0));
+        assertEquals("4294967296", map.remove(1L << 32));
+        assertEquals("-9223372036854775808", map.remove(Long.MIN_VALUE));
+        assertContainsExactly(map, 5, 5 + (1L << 32), 5 | Long.MIN_VALUE, 0xFFFFFFFFL, -1);
+    }
+
+    public void testExtremeKeys() {
+        LongObjectHashMap<String> map = mapOf(Long.MIN_VALUE, Long.MAX_VALUE, -1, 0);
+        assertContainsExactly(map, Long.MIN_VALUE, Long.MAX_VALUE, -1, 0);
+
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertTrue(Arrays.equals(new long[]{Long.MIN_VALUE, -1, 0, Long.MAX_VALUE}, keys));
+
+        for (Map.Entry<Number, String> entry : map.asMap().entrySet()) {
+            assertTrue(entry.getKey() instanceof Long);
+            assertEquals(entry.getKey().toString(), entry.getValue());
+        }
+    }
+
+    public void testRemoveShiftsKeysCollidingInTheirHighBits() {
+        // These keys differ only above bit 32, so they land in the same slot only because the hash mixes the high bits down.
+        long[] keys = new long[4];
+        int found = 0;
+        for (long high = 1; found < keys.length; high++) {
+            if (PrimitiveHashing.home(high << 32, SLOTS - 1) == SLOTS - 1) {
+                keys[found++] = high << 32;
+            }
+        }
+
+        // The probe sequence starts in the last slot and wraps around to the start of the table.
+        LongObjectHashMap<String> map = mapOf(keys);
+        assertEquals(Long.toString(keys[0]), map.remove(keys[0]));
+        assertNull(map.get(keys[0]));
+        assertContainsExactly(map, keys[1], keys[2], keys[3]);
+
+        assertEquals(Long.toString(keys[2]), map.remove(keys[2]));
+        assertContainsExactly(map, keys[1], keys[3]);
+
+        map.put(keys[0], Long.toString(keys[0]));
+        assertContainsExactly(map, keys[0], keys[1], keys[3]);
+    }
+
+    public void testAsMapAcceptsAnyIntegralNumber() {
+        LongObjectHashMap<String> map = mapOf(7, Integer.MIN_VALUE, Long.MAX_VALUE);
+        Map<Number, String> view = map.asMap();
+        assertEquals("7", view.get(7));
+        assertEquals("7", view.get((short) 7));
+        assertEquals("7", view.get(BigInteger.valueOf(7)));
+        assertEquals("-2147483648", view.get(Integer.MIN_VALUE));
+        assertEquals("9223372036854775807", view.get(BigInteger.valueOf(Long.MAX_VALUE)));
+        assertNull(view.get(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE)));
+        assertNull(view.get(7.0));
+
+        assertNull(view.put(8, "eight"));
+        assertEquals("eight", map.get(8L));
+        assertEquals("eight", view.remove(8L));
+    }
+
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // Few distinct low and high halves give many keys that share one half or the other.
+            long k = ((long) (random.nextInt(32) - 16) << 32) | random.nextInt(16);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(k, (long) i), map.put(k, (long) i));
+            } else {
+                assertEquals(expected.remove(k), map.remove(k));
+            }
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertEquals(expected, map.asMap());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.base;
+
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Tests for PrimitiveHashing.
+ *
+ * @author mcculley
+ */
+public class PrimitiveHashingTest extends TestCase {
+
+    private static final int MASK = 7;
+
+    public void testNextWrapsAround() {
+        assertEquals(1, PrimitiveHashing.next(0, MASK));
+        assertEquals(0, PrimitiveHashing.next(MASK, MASK));
+    }
+
+    public void testCanShift() {
+        // free, home and pos in order without wrapping: the entry can move back only if its probe sequence passes through free.
+        assertTrue(PrimitiveHashing.canShift(2, 1, 4));
+        assertTrue(PrimitiveHashing.canShift(2, 2, 4));
+        assertFalse(PrimitiveHashing.canShift(2, 3, 4));
+        assertFalse(PrimitiveHashing.canShift(2, 4, 4));
+
+        // The probe sequence of the entry wraps around the end of the table.
+        assertTrue(PrimitiveHashing.canShift(7, 6, 1));
+        assertTrue(PrimitiveHashing.canShift(0, 7, 1));
+        assertFalse(PrimitiveHashing.canShift(7, 0, 1));
+        assertFalse(PrimitiveHashing.canShift(6, 7, 1));
+    }
+
+    public void testLongHashUsesHighBits() {
+        // Keys that differ only above bit 32 must still spread across the table.
+        Set<Integer> slots = new HashSet<>();
+        for (long high = 0; high < 64; high++) {
+            slots.add(PrimitiveHashing.home(high << 32, MASK));
+        }
+
+        assertEquals(MASK + 1, slots.size());
+    }
+
+    public void testIntHashSpreadsSequentialKeys() {
+        Set<Integer> slots = new HashSet<>();
+        for (int k = 0; k < 64; k++) {
+            slots.add(PrimitiveHashing.home(k, MASK));
+        }
+
+        assertEquals(MASK + 1, slots.size());
+    }
+}
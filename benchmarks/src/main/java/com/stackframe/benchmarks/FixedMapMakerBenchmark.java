@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.stackframe.util.FixedMapMaker;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building and reading maps made by FixedMapMaker, against HashMap.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FixedMapMakerBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int columns;
+
+    private String[] keys;
+    private String[] lookupKeys;
+    private Object[] values;
+    private FixedMapMaker<String> maker;
+    private Map<String, Object> fixedMap;
+    private Map<String, Object> hashMap;
+    private FixedMapMaker.FrozenMap<String, Object> frozenMap;
+
+    @Setup
+    public void setUp() {
+        keys = new String[columns];
+        lookupKeys = new String[columns];
+        values = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            keys[i] = "column" + i;
+            // Look up with equal but distinct instances, as a caller parsing a name would, so lookups do not take the identity
+            // fast path for the instances the maker was built with.
+            lookupKeys[i] = new String(keys[i]);
+            values[i] = i;
+        }
+
+        maker = new FixedMapMaker<>(keys);
+        fixedMap = fill();
+        hashMap = new HashMap<>(fixedMap);
+        frozenMap = fill().freeze();
+    }
+
+    private FixedMapMaker.FixedMap<String, Object> fill() {
+        FixedMapMaker.FixedMap<String, Object> map = maker.make();
+        for (int i = 0; i < values.length; i++) {
+            map.set(i, values[i]);
+        }
+
+        return map;
+    }
+
+    @Benchmark
+    public Map<String, Object> buildFixedMap() {
+        return fill();
+    }
+
+    @Benchmark
+    public Map<String, Object> buildHashMap() {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], values[i]);
+        }
+
+        return map;
+    }
+
+    @Benchmark
+    public void getFixedMap(Blackhole blackhole) {
+        for (String key : lookupKeys) {
+            blackhole.consume(fixedMap.get(key));
+        }
+    }
+
+    @Benchmark
+    public void getFixedMapSameKeys(Blackhole blackhole) {
+        for (String key : keys) {
+            blackhole.consume(fixedMap.get(key));
+        }
+    }
+
+    @Benchmark
+    public void getFrozenMap(Blackhole blackhole) {
+        for (String key : lookupKeys) {
+            blackhole.consume(frozenMap.get(key));
+        }
+    }
+
+    @Benchmark
+    public void getHashMap(Blackhole blackhole) {
+        for (String key : lookupKeys) {
+            blackhole.consume(hashMap.get(key));
+        }
+    }
+
+    @Benchmark
+    public int hashCodeFrozenMap() {
+        return frozenMap.hashCode();
+    }
+
+    @Benchmark
+    public int hashCodeHashMap() {
+        return hashMap.hashCode();
+    }
+}
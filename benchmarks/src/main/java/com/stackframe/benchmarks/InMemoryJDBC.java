@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+/**
+ * An in-memory stand-in for a JDBC driver, so that the code that loads a ResultSet can be measured without the cost and noise of
+ * a real database. Only the methods used by the library are implemented; anything else throws UnsupportedOperationException.
+ *
+ * @author mcculley
+ */
+public class InMemoryJDBC {
+
+    private InMemoryJDBC() {
+        // Inhibit construction as this is a utility class.
+    }
+
+    /**
+     * Make a PreparedStatement whose executeQuery() returns a fresh ResultSet over some rows each time it is called.
+     *
+     * @param columns the column names
+     * @param types the java.sql.Types of the columns
+     * @param rows the rows, each holding one value per column
+     * @return a PreparedStatement
+     */
+    public static PreparedStatement statement(final String[] columns, final int[] types, final Object[][] rows) {
+        return (PreparedStatement) Proxy.newProxyInstance(InMemoryJDBC.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "executeQuery":
+                        return resultSet(columns, types, rows);
+                    case "close":
+                    case "cancel":
+                    case "setQueryTimeout":
+                    case "setObject":
+                        return null;
+                    case "isClosed":
+                        return false;
+                    default:
+                        return unsupported(method);
+                }
+            }
+        });
+    }
+
+    /**
+     * Make a table of rows with a BIGINT id column, a VARCHAR name column, a DOUBLE amount column and a nullable INTEGER count
+     * column.
+     *
+     * @param rowCount the number of rows
+     * @return a PreparedStatement over the rows
+     */
+    public static PreparedStatement sampleStatement(int rowCount) {
+        String[] columns = {"id", "name", "amount", "count"};
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.DOUBLE, Types.INTEGER};
+        Object[][] rows = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[]{(long) i, "name" + i, i * 1.5, i % 10 == 0 ? null : i % 100};
+        }
+
+        return statement(columns, types, rows);
+    }
+
+    private static Object unsupported(Method method) {
+        throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName());
+    }
+
+    private static ResultSetMetaData metaData(final String[] columns, final int[] types) {
+        return (ResultSetMetaData) Proxy.newProxyInstance(InMemoryJDBC.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getColumnCount":
+                        return columns.length;
+                    case "getColumnName":
+                    case "getColumnLabel":
+                        return columns[(Integer) args[0] - 1];
+                    case "getColumnType":
+                        return types[(Integer) args[0] - 1];
+                    default:
+                        return unsupported(method);
+                }
+            }
+        });
+    }
+
+    private static ResultSet resultSet(final String[] columns, final int[] types, final Object[][] rows) {
+        final ResultSetMetaData metaData = metaData(columns, types);
+        return (ResultSet) Proxy.newProxyInstance(InMemoryJDBC.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new InvocationHandler() {
+            private int row = -1;
+            private boolean wasNull;
+            private boolean closed;
+
+            private Object value(Object[] args) {
+                Object value = rows[row][(Integer) args[0] - 1];
+                wasNull = value == null;
+                return value;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "next":
+                        return ++row < rows.length;
+                    case "getMetaData":
+                        return metaData;
+                    case "getObject":
+                        return value(args);
+                    case "getLong": {
+                        Object value = value(args);
+                        return value == null ? 0L : ((Number) value).longValue();
+                    }
+                    case "getInt": {
+                        Object value = value(args);
+                        return value == null ? 0 : ((Number) value).intValue();
+                    }
+                    case "getDouble": {
+                        Object value = value(args);
+                        return value == null ? 0.0 : ((Number) value).doubleValue();
+                    }
+                    case "getBoolean": {
+                        Object value = value(args);
+                        return value != null && (Boolean) value;
+                    }
+                    case "getString": {
+                        Object value = value(args);
+                        return value == null ? null : value.toString();
+                    }
+                    case "wasNull":
+                        return wasNull;
+                    case "close":
+                        closed = true;
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    default:
+                        return unsupported(method);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+import com.stackframe.base.IntegralKeyMap;
+import com.stackframe.base.Numbers;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures looking up a function of an integer key through IntegralKeyMap, against Maps.asMap() over Numbers.positiveIntegers.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntegralKeyMapBenchmark {
+
+    private Map<Number, String> asMap;
+    private Map<Number, String> uncached;
+    private Map<Number, String> cached;
+    private Integer intKey;
+    private Long longKey;
+
+    @Setup
+    public void setUp() {
+        asMap = Maps.asMap(Numbers.positiveIntegers, new Function<Number, String>() {
+            @Override
+            public String apply(Number n) {
+                return "value";
+            }
+        });
+        LongFunction<String> function = new LongFunction<String>() {
+            @Override
+            public String apply(long value) {
+                return "value";
+            }
+        };
+        uncached = IntegralKeyMap.positive(function, 0);
+        cached = IntegralKeyMap.positive(function, 1024);
+        intKey = 12345;
+        longKey = 12345L;
+    }
+
+    @Benchmark
+    public String asMapInteger() {
+        return asMap.get(intKey);
+    }
+
+    @Benchmark
+    public String asMapLong() {
+        return asMap.get(longKey);
+    }
+
+    @Benchmark
+    public String integralKeyMapInteger() {
+        return uncached.get(intKey);
+    }
+
+    @Benchmark
+    public String integralKeyMapLong() {
+        return uncached.get(longKey);
+    }
+
+    @Benchmark
+    public String integralKeyMapCached() {
+        return cached.get(longKey);
+    }
+}
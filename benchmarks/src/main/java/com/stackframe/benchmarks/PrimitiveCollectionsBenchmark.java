@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.stackframe.base.LongHashSet;
+import com.stackframe.base.LongObjectHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the primitive collections in com.stackframe.base against HashMap and HashSet with boxed keys.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitiveCollectionsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private long[] keys;
+    private LongObjectHashMap<String> primitiveMap;
+    private Map<Long, String> hashMap;
+    private LongHashSet primitiveSet;
+    private Set<Long> hashSet;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new long[size];
+        primitiveMap = new LongObjectHashMap<>();
+        hashMap = new HashMap<>();
+        primitiveSet = new LongHashSet();
+        hashSet = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            long key = random.nextLong();
+            keys[i] = key;
+            primitiveMap.put(key, "value");
+            hashMap.put(key, "value");
+            primitiveSet.add(key);
+            hashSet.add(key);
+        }
+    }
+
+    @Benchmark
+    public LongObjectHashMap<String> putPrimitiveMap() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        for (long key : keys) {
+            map.put(key, "value");
+        }
+
+        return map;
+    }
+
+    @Benchmark
+    public Map<Long, String> putHashMap() {
+        Map<Long, String> map = new HashMap<>();
+        for (long key : keys) {
+            map.put(key, "value");
+        }
+
+        return map;
+    }
+
+    @Benchmark
+    public void getPrimitiveMap(Blackhole blackhole) {
+        for (long key : keys) {
+            blackhole.consume(primitiveMap.get(key));
+        }
+    }
+
+    @Benchmark
+    public void getHashMap(Blackhole blackhole) {
+        for (long key : keys) {
+            blackhole.consume(hashMap.get(key));
+        }
+    }
+
+    @Benchmark
+    public void containsPrimitiveSet(Blackhole blackhole) {
+        for (long key : keys) {
+            blackhole.consume(primitiveSet.contains(key));
+        }
+    }
+
+    @Benchmark
+    public void containsHashSet(Blackhole blackhole) {
+        for (long key : keys) {
+            blackhole.consume(hashSet.contains(key));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.stackframe.collect.RangeUtilities;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures testing a value against a list of disjoint ranges, where the value is in the last range or in none of them.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeUtilitiesBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int ranges;
+
+    private List<Range<Integer>> list;
+    private Integer inLast;
+    private Integer outside;
+
+    @Setup
+    public void setUp() {
+        ImmutableList.Builder<Range<Integer>> b = ImmutableList.builder();
+        for (int i = 0; i < ranges; i++) {
+            b.add(Range.closedOpen(i * 100, i * 100 + 50));
+        }
+
+        list = b.build();
+        inLast = (ranges - 1) * 100 + 25;
+        outside = -1000;
+    }
+
+    @Benchmark
+    public boolean containsInLast() {
+        return RangeUtilities.contains(list, inLast);
+    }
+
+    @Benchmark
+    public boolean containsOutside() {
+        return RangeUtilities.contains(list, outside);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.google.common.base.Function;
+import com.stackframe.reflect.ReflectionUtils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading a JavaBeans property through the Functions made by ReflectionUtils, against calling the getter directly.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReflectionUtilsBenchmark {
+
+    /**
+     * A JavaBean to read a property from.
+     */
+    public static class Bean {
+
+        private final String name;
+
+        public Bean(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private Bean bean;
+    private Function<Bean, String> typed;
+    private Function<Bean, String> untyped;
+
+    @Setup
+    public void setUp() {
+        bean = new Bean("bean");
+        typed = ReflectionUtils.functionForProperty(Bean.class, "name");
+        untyped = ReflectionUtils.functionForProperty("name");
+    }
+
+    @Benchmark
+    public String direct() {
+        return bean.getName();
+    }
+
+    @Benchmark
+    public String functionForPropertyOfClass() {
+        return typed.apply(bean);
+    }
+
+    @Benchmark
+    public String functionForPropertyByName() {
+        return untyped.apply(bean);
+    }
+
+    @Benchmark
+    public Function<Bean, String> makeFunctionForProperty() {
+        return ReflectionUtils.functionForProperty(Bean.class, "name");
+    }
+}
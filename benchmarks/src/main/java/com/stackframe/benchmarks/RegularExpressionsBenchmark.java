@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.google.common.collect.ImmutableList;
+import com.stackframe.regex.RegularExpressions;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures matching an input against a list of patterns, where the input matches the last pattern or none of them.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegularExpressionsBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int patterns;
+
+    private Iterable<Pattern> compiled;
+    private String matching;
+    private String missing;
+
+    @Setup
+    public void setUp() {
+        ImmutableList.Builder<String> expressions = ImmutableList.builder();
+        for (int i = 0; i < patterns; i++) {
+            expressions.add("/api/v" + i + "/[a-z]+/\\d+");
+        }
+
+        compiled = RegularExpressions.compile(expressions.build());
+        matching = "/api/v" + (patterns - 1) + "/users/12345";
+        missing = "/static/images/logo.png";
+    }
+
+    @Benchmark
+    public boolean matchesLast() {
+        return RegularExpressions.matches(compiled, matching);
+    }
+
+    @Benchmark
+    public boolean matchesNone() {
+        return RegularExpressions.matches(compiled, missing);
+    }
+}
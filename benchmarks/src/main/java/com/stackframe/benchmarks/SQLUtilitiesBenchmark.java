@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.stackframe.sql.SQLUtilities;
+import com.stackframe.util.FixedMapTable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading a ResultSet with SQLUtilities, against the obvious approach of a HashMap per row.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SQLUtilitiesBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private PreparedStatement statement;
+
+    @Setup
+    public void setUp() {
+        statement = InMemoryJDBC.sampleStatement(rows);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> load() throws SQLException {
+        return SQLUtilities.load(statement);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> loadImmutable() throws SQLException {
+        return SQLUtilities.loadImmutable(statement);
+    }
+
+    @Benchmark
+    public FixedMapTable<String> loadTable() throws SQLException {
+        return SQLUtilities.loadTable(statement);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> loadHashMaps() throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            List<Map<String, Object>> entries = new ArrayList<>();
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int columnCount = rsmd.getColumnCount();
+            while (rs.next()) {
+                Map<String, Object> map = new HashMap<>();
+                for (int i = 1; i <= columnCount; i++) {
+                    map.put(rsmd.getColumnName(i), rs.getObject(i));
+                }
+
+                entries.add(map);
+            }
+
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.stackframe.util.Watchdog;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the overhead of watching an operation that finishes well within its deadline, from one thread and from several.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WatchdogBenchmark {
+
+    private Watchdog watchdog;
+
+    @Setup
+    public void setUp() {
+        watchdog = new Watchdog();
+    }
+
+    @TearDown
+    public void tearDown() {
+        watchdog.close();
+    }
+
+    @Benchmark
+    public void startStop() {
+        watchdog.stop(watchdog.start("benchmark", 60000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void startStopContended() {
+        watchdog.stop(watchdog.start("benchmark", 60000));
+    }
+
+    @Benchmark
+    public void tryWithResources(Blackhole blackhole) {
+        try (Watchdog.Token token = watchdog.start("benchmark", 60000)) {
+            // The operation itself only consumes the token so that only the watching is measured.
+            blackhole.consume(token);
+        }
+    }
+}
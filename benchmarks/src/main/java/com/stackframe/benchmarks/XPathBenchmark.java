@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.benchmarks;
+
+
+import com.stackframe.xml.DOMUtilities;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures evaluating an XPath expression through the cache in DOMUtilities, against compiling it on every call.
+ *
+ * @author mcculley
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XPathBenchmark {
+
+    private static final String EXPRESSION = "/catalog/item[@type='book']/title/text()";
+
+    private Document document;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder xml = new StringBuilder("<catalog>");
+        for (int i = 0; i < 100; i++) {
+            xml.append("<item type='").append(i % 2 == 0 ? "book" : "film").append("'><title>Title ").append(i)
+                    .append("</title></item>");
+        }
+
+        xml.append("</catalog>");
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml.toString())));
+    }
+
+    @Benchmark
+    public NodeList cached() throws XPathExpressionException {
+        return DOMUtilities.nodeList(document, EXPRESSION);
+    }
+
+    @Benchmark
+    public NodeList compiledEveryCall() throws XPathExpressionException {
+        return (NodeList) XPathFactory.newInstance().newXPath().compile(EXPRESSION).evaluate(document, XPathConstants.NODESET);
+    }
+}
@@ -10,6 +10,7 @@
  */
 package com.stackframe.logging;
 
+import com.stackframe.util.Metrics;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -32,10 +33,20 @@ import javax.mail.internet.MimeMultipart;
 /**
  * A logging handler that sends the log messages as email.
  *
+ * The number of records waiting to be sent is recorded by the "logging.mail.queue" histogram of Metrics as each record is
+ * published. The time taken to send each email is recorded by the "logging.mail.send" timer and failures to send are counted by
+ * the "logging.mail.failures" counter.
+ *
  * @author Gene McCulley
  */
 public class MailHandler extends Handler {
 
+    private static final Metrics.Histogram queueDepth = Metrics.histogram("logging.mail.queue");
+
+    private static final Metrics.Timer sendTimer = Metrics.timer("logging.mail.send");
+
+    private static final Metrics.Counter sendFailures = Metrics.counter("logging.mail.failures");
+
     private final String to;
 
     private final String subject;
@@ -119,9 +130,15 @@ public class MailHandler extends Handler {
                 buffer.append(formatter.format(lr));
             }
 
+            boolean timed = Metrics.isEnabled();
+            long start = timed ? System.nanoTime() : 0;
             try {
                 sendEmail(to, from, subject, buffer.toString(), host, port);
+                if (timed) {
+                    sendTimer.record(System.nanoTime() - start);
+                }
             } catch (Exception e) {
+                sendFailures.increment();
                 getErrorManager().error("exception sending email", e, ErrorManager.FLUSH_FAILURE);
             }
         }
@@ -136,6 +153,7 @@ public class MailHandler extends Handler {
         }
 
         published.add(lr);
+        queueDepth.record(published.size());
         if (published.size() >= maximumRecords) {
             flush();
         }
@@ -12,6 +12,7 @@ package com.stackframe.reflect;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.stackframe.util.Metrics;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
@@ -24,10 +25,14 @@ import java.util.TreeMap;
 /**
  * Useful utilities that leverage reflection.
  *
+ * Each getter invoked by the Predicates and Functions made here is counted by the "reflect.invocations" counter of Metrics.
+ *
  * @author Gene McCulley
  */
 public class ReflectionUtils {
 
+    private static final Metrics.Counter invocations = Metrics.counter("reflect.invocations");
+
     private ReflectionUtils() {
         // Inhibit construction as this is a utility class.
     }
@@ -127,6 +132,7 @@ public class ReflectionUtils {
                 @Override
                 public boolean apply(T t) {
                     try {
+                        invocations.increment();
                         return (Boolean) getter.invoke(t, (Object[]) null);
                     } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
                         throw new RuntimeException(e);
@@ -161,6 +167,7 @@ public class ReflectionUtils {
                     assert pd.getPropertyType() == boolean.class;
                     Method getter = pd.getReadMethod();
                     assert getter.getParameterTypes().length == 0;
+                    invocations.increment();
                     return (Boolean) getter.invoke(t, (Object[]) null);
                 } catch (IntrospectionException | IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
                     throw new RuntimeException(e);
@@ -190,6 +197,7 @@ public class ReflectionUtils {
                 @Override
                 public T apply(F f) {
                     try {
+                        invocations.increment();
                         return (T) getter.invoke(f, (Object[]) null);
                     } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
                         throw new RuntimeException(e);
@@ -223,6 +231,7 @@ public class ReflectionUtils {
 
                     Method getter = pd.getReadMethod();
                     assert getter.getParameterTypes().length == 0;
+                    invocations.increment();
                     return (T) getter.invoke(f, (Object[]) null);
                 } catch (IntrospectionException | IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
                     throw new RuntimeException(String.format("trouble with property '%s' on class '%s'", property, c.getName()), e);
@@ -12,16 +12,21 @@ package com.stackframe.regex;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.stackframe.util.Metrics;
 import java.util.regex.Pattern;
 import java.util.stream.StreamSupport;
 
 /**
  * Utilities for dealing with regular expressions.
  *
+ * Each Pattern tried by matches() is counted by the "regex.evaluations" counter of Metrics.
+ *
  * @author mcculley
  */
 public class RegularExpressions {
 
+    private static final Metrics.Counter evaluations = Metrics.counter("regex.evaluations");
+
     /**
      * Compile an Iterable of regular expressions.
      *
@@ -45,7 +50,10 @@ public class RegularExpressions {
      * @return true if the input matches any of the patterns
      */
     public static boolean matches(Iterable<Pattern> patterns, CharSequence input) {
-        return StreamSupport.stream(patterns.spliterator(), false).anyMatch(pattern -> pattern.matcher(input).matches());
+        return StreamSupport.stream(patterns.spliterator(), false).anyMatch(pattern -> {
+            evaluations.increment();
+            return pattern.matcher(input).matches();
+        });
     }
 
     /**
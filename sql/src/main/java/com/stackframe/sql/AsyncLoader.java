@@ -0,0 +1,361 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import com.stackframe.util.FixedMapTable;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Runs queries against a DataSource without blocking the caller. Each query returns a CompletableFuture, so a page that needs a
+ * dozen independent queries can start them all at once and wait for the slowest rather than for the sum of them:
+ *
+ * <pre>
+ * CompletableFuture&lt;List&lt;Map&lt;String, Object&gt;&gt;&gt; users = loader.loadAsync("SELECT * FROM users WHERE id = ?", id);
+ * CompletableFuture&lt;List&lt;Map&lt;String, Object&gt;&gt;&gt; orders = loader.loadAsync("SELECT * FROM orders WHERE user_id = ?", id);
+ * CompletableFuture.allOf(users, orders).join();
+ * </pre>
+ *
+ * The number of statements running at once is capped so that a burst of queries cannot exhaust the connection pool; queries over
+ * the cap wait in a queue without holding a thread. Create one AsyncLoader per DataSource so that the cap applies to all queries
+ * against it.
+ *
+ * Cancelling a returned future, or letting it time out, calls Statement.cancel() on a statement that is running so that the
+ * database stops working on it; a query that has not started yet is simply never run.
+ *
+ * @author mcculley
+ */
+public class AsyncLoader implements AutoCloseable {
+
+    /**
+     * A function that loads a result from an executed PreparedStatement, such as SQLUtilities::load.
+     *
+     * @param <T> the type of result
+     */
+    public interface StatementLoader<T> {
+
+        /**
+         * @param statement a PreparedStatement with its parameters bound
+         * @return the result
+         * @throws SQLException if the statement fails
+         */
+        T load(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * The threads shared by all AsyncLoaders: one that times queries out, and a pool that calls Statement.cancel(), which can
+     * block on the network and so must not hold up the timer.
+     */
+    private static class SharedThreads {
+
+        private static final ScheduledExecutorService timer = newTimer();
+        private static final ExecutorService canceller = Executors.newCachedThreadPool(daemonThreadFactory("AsyncLoader-cancel"));
+
+        private static ScheduledExecutorService newTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("AsyncLoader-timeout"));
+            // Most queries finish in time, so drop their cancelled timeouts at once rather than leaving them queued until due.
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final Queue<Query<?>> waiting = new ConcurrentLinkedQueue<>();
+
+    private AsyncLoader(DataSource dataSource, ExecutorService executor, boolean ownsExecutor, int maximumConcurrentStatements) {
+        if (maximumConcurrentStatements < 1) {
+            throw new IllegalArgumentException("maximumConcurrentStatements must be at least 1");
+        }
+
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maximumConcurrentStatements);
+    }
+
+    /**
+     * Create an AsyncLoader that runs queries on a caller-supplied executor. The executor is not shut down when the AsyncLoader is
+     * closed.
+     *
+     * @param dataSource the DataSource to get connections from
+     * @param executor the executor to run queries on
+     * @param maximumConcurrentStatements the maximum number of statements to run at once
+     */
+    public AsyncLoader(DataSource dataSource, ExecutorService executor, int maximumConcurrentStatements) {
+        this(dataSource, executor, false, maximumConcurrentStatements);
+    }
+
+    /**
+     * Create an AsyncLoader that runs each query on its own thread, using virtual threads when the Java runtime has them.
+     *
+     * @param dataSource the DataSource to get connections from
+     * @param maximumConcurrentStatements the maximum number of statements to run at once
+     * @see #newThreadPerTaskExecutor()
+     */
+    public AsyncLoader(DataSource dataSource, int maximumConcurrentStatements) {
+        this(dataSource, newThreadPerTaskExecutor(), true, maximumConcurrentStatements);
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Make an executor that starts a new thread for each task. On a Java runtime with virtual threads this is
+     * Executors.newVirtualThreadPerTaskExecutor(), which makes a thread blocked on JDBC nearly free. Otherwise it is a cached pool
+     * of daemon platform threads. Virtual threads are looked up reflectively so that this library still runs on Java 8.
+     *
+     * @return a new executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newCachedThreadPool(daemonThreadFactory("AsyncLoader"));
+        }
+    }
+
+    /**
+     * Run a query asynchronously.
+     *
+     * @param <T> the type of result
+     * @param timeout the time to allow the query, including any time waiting to start, or 0 for no limit
+     * @param unit the unit of timeout
+     * @param loader the function that loads the result from the executed statement
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return a CompletableFuture for the result; it completes exceptionally with a TimeoutException if the query times out
+     */
+    public <T> CompletableFuture<T> queryAsync(long timeout, TimeUnit unit, final StatementLoader<T> loader, final String sql,
+            final Object... parameters) {
+        final Query<T> query = new Query<>(loader, sql, parameters);
+        if (timeout > 0) {
+            query.timeout = unit.toNanos(timeout);
+            final ScheduledFuture<?> timer = SharedThreads.timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    query.result.completeExceptionally(new TimeoutException(String.format("query timed out after %d %s: %s",
+                            timeout, unit, sql)));
+                }
+            }, timeout, unit);
+            query.result.whenComplete((value, failure) -> timer.cancel(false));
+        }
+
+        // Whether the future was cancelled or timed out, stop the database from working on a statement that is still running.
+        query.result.whenComplete((value, failure) -> {
+            if (failure != null) {
+                query.cancelStatement();
+            }
+        });
+        waiting.add(query);
+        drain();
+        return query.result;
+    }
+
+    /**
+     * Load the results of a query asynchronously into a List of Map objects, as with SQLUtilities.load().
+     *
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return a CompletableFuture for the rows
+     */
+    public CompletableFuture<List<Map<String, Object>>> loadAsync(String sql, Object... parameters) {
+        return queryAsync(0, TimeUnit.MILLISECONDS, SQLUtilities::load, sql, parameters);
+    }
+
+    /**
+     * Load the results of a query asynchronously into a List of Map objects, as with SQLUtilities.load(), giving up after a
+     * timeout.
+     *
+     * @param timeout the time to allow the query, including any time waiting to start
+     * @param unit the unit of timeout
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return a CompletableFuture for the rows
+     */
+    public CompletableFuture<List<Map<String, Object>>> loadAsync(long timeout, TimeUnit unit, String sql, Object... parameters) {
+        return queryAsync(timeout, unit, SQLUtilities::load, sql, parameters);
+    }
+
+    /**
+     * Load the results of a query asynchronously into an immutable List of immutable Map objects, as with
+     * SQLUtilities.loadImmutable().
+     *
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return a CompletableFuture for the rows
+     */
+    public CompletableFuture<List<Map<String, Object>>> loadImmutableAsync(String sql, Object... parameters) {
+        return queryAsync(0, TimeUnit.MILLISECONDS, SQLUtilities::loadImmutable, sql, parameters);
+    }
+
+    /**
+     * Load the results of a query asynchronously into a FixedMapTable, as with SQLUtilities.loadTable().
+     *
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return a CompletableFuture for the table
+     */
+    public CompletableFuture<FixedMapTable<String>> loadTableAsync(String sql, Object... parameters) {
+        return queryAsync(0, TimeUnit.MILLISECONDS, SQLUtilities::loadTable, sql, parameters);
+    }
+
+    /**
+     * Start as many waiting queries as there are permits for. This is called whenever a query is added and whenever one finishes,
+     * so a waiting query and a free permit are never left apart.
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            final Query<?> query = waiting.poll();
+            if (query == null) {
+                permits.release();
+                continue;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            query.run();
+                        } finally {
+                            permits.release();
+                            drain();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ree) {
+                permits.release();
+                query.result.completeExceptionally(ree);
+            }
+        }
+    }
+
+    /**
+     * Shut down the threads of this AsyncLoader, if it created them. Queries still waiting to start are cancelled.
+     */
+    @Override
+    public void close() {
+        Query<?> query;
+        while ((query = waiting.poll()) != null) {
+            query.result.cancel(false);
+        }
+
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private final class Query<T> implements Runnable {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final StatementLoader<T> loader;
+        private final String sql;
+        private final Object[] parameters;
+        private final long created = System.nanoTime();
+        private long timeout;
+        private PreparedStatement statement;
+
+        private Query(StatementLoader<T> loader, String sql, Object[] parameters) {
+            this.loader = loader;
+            this.sql = sql;
+            this.parameters = parameters.clone();
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+
+            try (Connection connection = dataSource.getConnection();
+                    PreparedStatement ps = connection.prepareStatement(sql)) {
+                SQLUtilities.bind(ps, parameters);
+                if (timeout > 0) {
+                    // Also have the driver enforce the time left, in case Statement.cancel() is not supported.
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(timeout - (System.nanoTime() - created));
+                    ps.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+                }
+
+                synchronized (this) {
+                    statement = ps;
+                }
+
+                try {
+                    if (!result.isDone()) {
+                        result.complete(loader.load(ps));
+                    }
+                } finally {
+                    synchronized (this) {
+                        statement = null;
+                    }
+                }
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        /**
+         * Cancel the statement if it is running. This is called from whichever thread completed the result, which may be the
+         * shared timer thread, so the cancel itself is handed to another thread.
+         */
+        private void cancelStatement() {
+            final PreparedStatement running;
+            synchronized (this) {
+                running = statement;
+            }
+
+            if (running != null) {
+                SharedThreads.canceller.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            running.cancel();
+                        } catch (SQLException sqle) {
+                            // The driver cannot cancel, or the statement has since finished; the query timeout is the backstop.
+                        }
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import com.stackframe.util.Metrics;
+import java.lang.reflect.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+/**
+ * A read-through cache of query results, for reference data that is queried far more often than it changes.
+ *
+ * Results are keyed by the SQL and the bound parameters (compared with equals(), so an Integer and a Long parameter make different
+ * keys) and are loaded with SQLUtilities.loadImmutable(), so a cached result is an
+ * immutable List of immutable Maps that all share one key index; it can be handed to any number of threads without copying.
+ *
+ * Results expire after a time to live and the least recently used are evicted to keep the total weight (by default, the number of
+ * cells) under a bound. Each query can be given tags, typically the names of the tables it reads, so that code that writes a table
+ * can invalidate every result that depends on it.
+ *
+ * When several threads miss on the same key at once, only one of them runs the query and the others wait for its result, so a
+ * popular result expiring does not send a stampede of identical queries to the database. Lookups that wait are counted as waits
+ * rather than as hits or misses.
+ *
+ * Lookups are also counted by the "sql.cache.hits", "sql.cache.misses" and "sql.cache.waits" counters of Metrics.
+ *
+ * @author mcculley
+ */
+public class QueryCache implements QueryCacheMXBean {
+
+    /**
+     * Computes the weight of a cached result.
+     */
+    public interface Weigher {
+
+        /**
+         * @param rows the result
+         * @return the weight of the result, at least 0
+         */
+        long weigh(List<Map<String, Object>> rows);
+    }
+
+    /**
+     * A Weigher that weighs a result by its number of cells, plus one so that empty results are not free.
+     */
+    public static final Weigher CELLS = new Weigher() {
+        @Override
+        public long weigh(List<Map<String, Object>> rows) {
+            return rows.isEmpty() ? 1 : (long) rows.size() * rows.get(0).size() + 1;
+        }
+    };
+
+    /**
+     * A Weigher that weighs every result as 1, so that the maximum weight is a maximum number of results.
+     */
+    public static final Weigher ENTRIES = new Weigher() {
+        @Override
+        public long weigh(List<Map<String, Object>> rows) {
+            return 1;
+        }
+    };
+
+    private static final Metrics.Counter hitCounter = Metrics.counter("sql.cache.hits");
+    private static final Metrics.Counter missCounter = Metrics.counter("sql.cache.misses");
+    private static final Metrics.Counter waitCounter = Metrics.counter("sql.cache.waits");
+
+    private final DataSource dataSource;
+    private final long maximumWeight;
+    private final long timeToLive;
+    private final Weigher weigher;
+
+    // The entries, in least recently used order, and the tag index are guarded by this.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Key>> tagged = new HashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a QueryCache.
+     *
+     * @param dataSource the DataSource to query on a miss
+     * @param maximumWeight the maximum total weight of cached results
+     * @param weigher the Weigher that computes the weight of a result
+     * @param timeToLive how long a result is cached, or 0 to keep results until they are evicted or invalidated
+     * @param unit the unit of timeToLive
+     */
+    public QueryCache(DataSource dataSource, long maximumWeight, Weigher weigher, long timeToLive, TimeUnit unit) {
+        if (maximumWeight < 1 || timeToLive < 0) {
+            throw new IllegalArgumentException("maximumWeight must be at least 1 and timeToLive must not be negative");
+        }
+
+        this.dataSource = dataSource;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.timeToLive = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * Create a QueryCache that holds at most a number of cells.
+     *
+     * @param dataSource the DataSource to query on a miss
+     * @param maximumCells the maximum total number of cells in cached results
+     * @param timeToLive how long a result is cached, or 0 to keep results until they are evicted or invalidated
+     * @param unit the unit of timeToLive
+     */
+    public QueryCache(DataSource dataSource, long maximumCells, long timeToLive, TimeUnit unit) {
+        this(dataSource, maximumCells, CELLS, timeToLive, unit);
+    }
+
+    /**
+     * Load the results of a query through the cache.
+     *
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return an immutable List of immutable Map objects, as with SQLUtilities.loadImmutable()
+     * @throws SQLException if the query fails
+     */
+    public List<Map<String, Object>> load(String sql, Object... parameters) throws SQLException {
+        return load(Collections.<String>emptySet(), sql, parameters);
+    }
+
+    /**
+     * Load the results of a query through the cache, tagging a result that has to be loaded so that it can be invalidated later.
+     *
+     * @param tags the tags of the query, typically the names of the tables it reads
+     * @param sql the SQL of the query
+     * @param parameters the parameters to bind to the statement
+     * @return an immutable List of immutable Map objects, as with SQLUtilities.loadImmutable()
+     * @throws SQLException if the query fails
+     */
+    public List<Map<String, Object>> load(Collection<String> tags, String sql, Object... parameters) throws SQLException {
+        Key key = new Key(sql, parameters);
+        Entry entry;
+        boolean loading = false;
+        boolean waiting = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && expired(entry)) {
+                remove(key, entry);
+                entry = null;
+            }
+
+            if (entry == null) {
+                entry = new Entry(tags);
+                entries.put(key, entry);
+                for (String tag : entry.tags) {
+                    Set<Key> keys = tagged.get(tag);
+                    if (keys == null) {
+                        keys = new HashSet<>();
+                        tagged.put(tag, keys);
+                    }
+
+                    keys.add(key);
+                }
+
+                loading = true;
+            } else {
+                waiting = !entry.result.isDone();
+            }
+        }
+
+        if (loading) {
+            misses.increment();
+            missCounter.increment();
+            return load(key, entry);
+        }
+
+        if (waiting) {
+            waits.increment();
+            waitCounter.increment();
+        } else {
+            hits.increment();
+            hitCounter.increment();
+        }
+
+        return await(entry);
+    }
+
+    private List<Map<String, Object>> load(Key key, Entry entry) throws SQLException {
+        List<Map<String, Object>> rows;
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(key.sql)) {
+            rows = SQLUtilities.loadImmutable(SQLUtilities.bind(statement, key.parameters));
+        } catch (SQLException | RuntimeException | Error e) {
+            loadFailures.increment();
+            synchronized (this) {
+                // Failures are not cached; the next lookup tries again.
+                if (entries.get(key) == entry) {
+                    remove(key, entry);
+                }
+            }
+
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+
+        long entryWeight = weigher.weigh(rows);
+        synchronized (this) {
+            // An entry invalidated while it was loading is not kept, as the query may have read data from before the change.
+            if (entries.get(key) == entry) {
+                entry.weight = entryWeight;
+                entry.loaded = System.nanoTime();
+                entry.weighed = true;
+                weight += entryWeight;
+                // This entry is the most recently used, so it is only evicted itself if it is over the maximum on its own.
+                evict();
+            }
+        }
+
+        entry.result.complete(rows);
+        return rows;
+    }
+
+    private boolean expired(Entry entry) {
+        return timeToLive != 0 && entry.result.isDone() && System.nanoTime() - entry.loaded > timeToLive;
+    }
+
+    private static List<Map<String, Object>> await(Entry entry) throws SQLException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return entry.result.get();
+                } catch (InterruptedException ie) {
+                    // Another thread is running the query on our behalf; keep waiting and restore the interrupt afterwards.
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof SQLException) {
+                        throw new SQLException(cause.getMessage(), ((SQLException) cause).getSQLState(),
+                                ((SQLException) cause).getErrorCode(), cause);
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used weighed entries until the weight is under the maximum. Entries still loading weigh nothing
+     * yet and are skipped.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> i = entries.entrySet().iterator();
+        while (weight > maximumWeight && i.hasNext()) {
+            Map.Entry<Key, Entry> e = i.next();
+            Entry entry = e.getValue();
+            if (entry.weighed) {
+                i.remove();
+                unindex(e.getKey(), entry);
+                evictions.increment();
+            }
+        }
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        unindex(key, entry);
+    }
+
+    private void unindex(Key key, Entry entry) {
+        weight -= entry.weight;
+        for (String tag : entry.tags) {
+            Set<Key> keys = tagged.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    tagged.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard every result that was loaded with a tag, including those still being loaded.
+     *
+     * @param tag the tag
+     * @return the number of results discarded
+     */
+    public synchronized int invalidate(String tag) {
+        Set<Key> keys = tagged.get(tag);
+        if (keys == null) {
+            return 0;
+        }
+
+        Key[] invalid = keys.toArray(new Key[keys.size()]);
+        for (Key key : invalid) {
+            remove(key, entries.get(key));
+        }
+
+        return invalid.length;
+    }
+
+    /**
+     * Discard the result of a query.
+     *
+     * @param sql the SQL of the query
+     * @param parameters the parameters bound to the statement
+     * @return true if a result was discarded
+     */
+    public synchronized boolean invalidate(String sql, Object... parameters) {
+        Key key = new Key(sql, parameters);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+
+        remove(key, entry);
+        return true;
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+        tagged.clear();
+        weight = 0;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private static final class Key {
+
+        private final String sql;
+        private final Object[] parameters;
+        private final int hashCode;
+
+        private Key(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = (Object[]) copy(parameters);
+            this.hashCode = sql.hashCode() * 31 + Arrays.deepHashCode(this.parameters);
+        }
+
+        /**
+         * Copy a parameter that could be changed after it was used as a key, such as a Date or an array, so that changing it does
+         * not change the key. Other values are immutable, or compared by identity and so unaffected by changes.
+         */
+        private static Object copy(Object value) {
+            if (value instanceof Date) {
+                // This keeps the subclass, and so the nanoseconds of a Timestamp.
+                return ((Date) value).clone();
+            } else if (value instanceof Object[]) {
+                Object[] array = ((Object[]) value).clone();
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = copy(array[i]);
+                }
+
+                return array;
+            } else if (value != null && value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                Object array = Array.newInstance(value.getClass().getComponentType(), length);
+                System.arraycopy(value, 0, array, 0, length);
+                return array;
+            } else {
+                return value;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return hashCode == other.hashCode && sql.equals(other.sql) && Arrays.deepEquals(parameters, other.parameters);
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<List<Map<String, Object>>> result = new CompletableFuture<>();
+        private final String[] tags;
+        private long loaded;
+        private long weight;
+        private boolean weighed;
+
+        private Entry(Collection<String> tags) {
+            this.tags = tags.toArray(new String[tags.size()]);
+        }
+    }
+}
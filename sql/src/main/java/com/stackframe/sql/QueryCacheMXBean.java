@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+/**
+ * The management interface of a QueryCache. Register a QueryCache with an MBeanServer to expose its statistics.
+ *
+ * @author mcculley
+ */
+public interface QueryCacheMXBean {
+
+    /**
+     * @return the number of lookups answered from a result already in the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups that had to query the database
+     */
+    long getMissCount();
+
+    /**
+     * @return the number of lookups that waited for another thread that was querying the database for the same result
+     */
+    long getWaitCount();
+
+    /**
+     * @return the fraction of hits among hits and misses, or 0 if there have been none; waits are not counted
+     */
+    double getHitRate();
+
+    /**
+     * @return the number of queries that failed
+     */
+    long getLoadFailureCount();
+
+    /**
+     * @return the number of results evicted to stay within the maximum weight
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of results cached or being loaded
+     */
+    int getSize();
+
+    /**
+     * @return the total weight of the cached results
+     */
+    long getWeight();
+
+    /**
+     * Discard every cached result.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,1134 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import com.stackframe.util.FixedMapMaker;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * A query result spilled to a compact, typed binary file, for results that are too large to hold on the heap or that have to be
+ * read more than once.
+ *
+ * The file is read through memory-mapped segments, so rows are decoded straight from the page cache and only the values actually
+ * read are materialized. Rows are Map views keyed by column name using the same FixedMapMaker schema as SQLUtilities.load(), and
+ * columns can be scanned as primitive streams. A file can be sorted on a column with an external merge sort that holds only a
+ * bounded number of rows in memory at a time.
+ *
+ * The file holds a header describing the columns, the rows, an index of row offsets and a trailer holding the row count and the
+ * position of the index. Each row is a length, a bitmap of null columns and then the values of the non-null columns. Rows never
+ * straddle a segment boundary, so every value can be read from a single mapped buffer.
+ *
+ * Values of types with no compact encoding are stored with Java serialization, limited to classes in the java.lang, java.math,
+ * java.sql, java.time and java.util packages (and arrays of them) so that reading a file cannot instantiate arbitrary classes.
+ * Even so, only open files that this process wrote, such as spill files in a private temporary directory; a result file is not an
+ * interchange format.
+ *
+ * A ResultFile is safe for use by multiple threads. Mapped memory is released when the ResultFile is garbage collected, not when
+ * it is closed.
+ *
+ * @author mcculley
+ */
+public class ResultFile implements Closeable {
+
+    private static final int MAGIC = 0x53465246;
+    private static final int VERSION = 1;
+    private static final int DEFAULT_SEGMENT_BITS = 30;
+    private static final int TRAILER_SIZE = 16;
+
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte TIMESTAMP = 7;
+    private static final byte DATE = 8;
+    private static final byte TIME = 9;
+    private static final byte DECIMAL = 10;
+    private static final byte OBJECT = 11;
+
+    private static final Set<String> serializablePackages = new HashSet<>(Arrays.asList("java.lang", "java.math", "java.sql",
+            "java.time", "java.util"));
+
+    /**
+     * The order of sort keys. The values of a sortable column are all of one Comparable type.
+     */
+    private static final Comparator<Object> keyOrder = Comparator.nullsFirst(ResultFile::compareKeys);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final String[] names;
+    private final byte[] types;
+    private final FixedMapMaker<String> maker;
+    private final int segmentBits;
+    private final long segmentMask;
+    private final ByteBuffer[] segments;
+    private final long rowCount;
+    private final long indexOffset;
+
+    private ResultFile(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException(file + " is not a result file");
+            }
+
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            rowCount = trailer.getLong(0);
+            indexOffset = trailer.getLong(8);
+
+            // The header is as long as the column names make it, so read it as a stream. The stream is not closed, as that would
+            // close the channel.
+            DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IOException(file + " is not a result file");
+            }
+
+            segmentBits = header.readInt();
+            int columnCount = header.readInt();
+            if (segmentBits < 1 || segmentBits > DEFAULT_SEGMENT_BITS || columnCount < 0 || columnCount > size) {
+                throw new IOException(file + " is not a result file");
+            }
+
+            segmentMask = (1L << segmentBits) - 1;
+            names = new String[columnCount];
+            types = new byte[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                types[i] = header.readByte();
+                names[i] = header.readUTF();
+            }
+
+            maker = new FixedMapMaker<>(names);
+            segments = new ByteBuffer[(int) ((size + segmentMask) >>> segmentBits)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << segmentBits;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentMask + 1, size - start));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Open a file written by write() or sort(). Only open files that this process wrote.
+     *
+     * @param file the file
+     * @return a ResultFile
+     * @throws IOException if the file cannot be read or is not a result file
+     */
+    public static ResultFile open(Path file) throws IOException {
+        return new ResultFile(file);
+    }
+
+    private static byte columnType(int sqlType) {
+        switch (sqlType) {
+            case Types.BIGINT:
+                return LONG;
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return INT;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return STRING;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BYTES;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.DATE:
+                return DATE;
+            case Types.TIME:
+                return TIME;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DECIMAL;
+            default:
+                return OBJECT;
+        }
+    }
+
+    /**
+     * Write every row of a ResultSet to a file and open it. Values of types that have no compact encoding are stored with Java
+     * serialization, which fails for classes outside the java.lang, java.math, java.sql, java.time and java.util packages.
+     *
+     * @param rs the ResultSet, which is read to the end but not closed
+     * @param file the file to write
+     * @return the opened ResultFile
+     * @throws SQLException if the ResultSet cannot be read
+     * @throws IOException if the file cannot be written or a value cannot be serialized
+     */
+    public static ResultFile write(ResultSet rs, Path file) throws SQLException, IOException {
+        return write(rs, file, DEFAULT_SEGMENT_BITS);
+    }
+
+    static ResultFile write(ResultSet rs, Path file, int segmentBits) throws SQLException, IOException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int columnCount = rsmd.getColumnCount();
+        String[] names = new String[columnCount];
+        byte[] types = new byte[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = rsmd.getColumnName(i + 1);
+            types[i] = columnType(rsmd.getColumnType(i + 1));
+        }
+
+        try (Writer writer = new Writer(file, names, types, segmentBits)) {
+            RowBuffer row = new RowBuffer();
+            DataOutputStream out = new DataOutputStream(row);
+            int bitmapLength = (columnCount + 7) / 8;
+            while (rs.next()) {
+                row.reset();
+                for (int i = 0; i < bitmapLength; i++) {
+                    out.writeByte(0);
+                }
+
+                for (int i = 0; i < columnCount; i++) {
+                    if (!encode(rs, i + 1, types[i], out)) {
+                        row.buffer()[i >> 3] |= 1 << (i & 7);
+                    }
+                }
+
+                writer.writeRow(row.buffer(), 0, row.size());
+            }
+
+            writer.finish();
+        }
+
+        return open(file);
+    }
+
+    /**
+     * Encode a value from a ResultSet.
+     *
+     * @return false if the value was null and nothing was written
+     */
+    private static boolean encode(ResultSet rs, int column, byte type, DataOutputStream out) throws SQLException, IOException {
+        switch (type) {
+            case LONG: {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+
+                out.writeLong(value);
+                return true;
+            }
+            case INT: {
+                int value = rs.getInt(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+
+                out.writeInt(value);
+                return true;
+            }
+            case DOUBLE: {
+                double value = rs.getDouble(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+
+                out.writeDouble(value);
+                return true;
+            }
+            case BOOLEAN: {
+                boolean value = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+
+                out.writeBoolean(value);
+                return true;
+            }
+            case STRING: {
+                String value = rs.getString(column);
+                if (value == null) {
+                    return false;
+                }
+
+                writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+                return true;
+            }
+            case BYTES: {
+                byte[] value = rs.getBytes(column);
+                if (value == null) {
+                    return false;
+                }
+
+                writeBytes(out, value);
+                return true;
+            }
+            case TIMESTAMP: {
+                Timestamp value = rs.getTimestamp(column);
+                if (value == null) {
+                    return false;
+                }
+
+                out.writeLong(value.getTime());
+                out.writeInt(value.getNanos());
+                return true;
+            }
+            case DATE: {
+                java.sql.Date value = rs.getDate(column);
+                if (value == null) {
+                    return false;
+                }
+
+                out.writeLong(value.getTime());
+                return true;
+            }
+            case TIME: {
+                Time value = rs.getTime(column);
+                if (value == null) {
+                    return false;
+                }
+
+                out.writeLong(value.getTime());
+                return true;
+            }
+            case DECIMAL: {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    return false;
+                }
+
+                out.writeInt(value.scale());
+                writeBytes(out, value.unscaledValue().toByteArray());
+                return true;
+            }
+            default: {
+                Object value = rs.getObject(column);
+                if (value == null) {
+                    return false;
+                }
+
+                ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ValueOutputStream(serialized)) {
+                    oos.writeObject(value);
+                }
+
+                writeBytes(out, serialized.toByteArray());
+                return true;
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return the schema of the rows
+     */
+    public FixedMapMaker<String> getMaker() {
+        return maker;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    /**
+     * @param name the name of a column
+     * @return the position of the column
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public int columnIndex(String name) {
+        int column = maker.indexOf(name);
+        if (column < 0) {
+            throw new IllegalArgumentException("no such column: " + name);
+        }
+
+        return column;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    private ByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> segmentBits)];
+    }
+
+    private long rowOffset(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + " is out of bounds for " + rowCount + " rows");
+        }
+
+        long position = indexOffset + row * 8;
+        return segment(position).getLong((int) (position & segmentMask));
+    }
+
+    /**
+     * @return the number of bytes taken by the value of a type at a position
+     */
+    private static int width(ByteBuffer segment, int position, byte type) {
+        switch (type) {
+            case LONG:
+            case DOUBLE:
+            case DATE:
+            case TIME:
+                return 8;
+            case INT:
+                return 4;
+            case BOOLEAN:
+                return 1;
+            case TIMESTAMP:
+                return 12;
+            case DECIMAL:
+                return 8 + segment.getInt(position + 4);
+            default:
+                return 4 + segment.getInt(position);
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer segment, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer b = segment.duplicate();
+        ((Buffer) b).position(position);
+        b.get(bytes);
+        return bytes;
+    }
+
+    private static Object decode(ByteBuffer segment, int position, byte type) {
+        switch (type) {
+            case LONG:
+                return segment.getLong(position);
+            case INT:
+                return segment.getInt(position);
+            case DOUBLE:
+                return segment.getDouble(position);
+            case BOOLEAN:
+                return segment.get(position) != 0;
+            case STRING:
+                return new String(bytes(segment, position + 4, segment.getInt(position)), StandardCharsets.UTF_8);
+            case BYTES:
+                return bytes(segment, position + 4, segment.getInt(position));
+            case TIMESTAMP: {
+                Timestamp value = new Timestamp(segment.getLong(position));
+                value.setNanos(segment.getInt(position + 8));
+                return value;
+            }
+            case DATE:
+                return new java.sql.Date(segment.getLong(position));
+            case TIME:
+                return new Time(segment.getLong(position));
+            case DECIMAL:
+                return new BigDecimal(new BigInteger(bytes(segment, position + 8, segment.getInt(position + 4))),
+                        segment.getInt(position));
+            default:
+                try (ObjectInputStream in = new ValueInputStream(new ByteArrayInputStream(bytes(segment, position + 4,
+                        segment.getInt(position))))) {
+                    return in.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+        }
+    }
+
+    /**
+     * Get a view of a row. The view decodes values from the mapped file as they are read.
+     *
+     * @param row the index of the row
+     * @return the row
+     */
+    public Row row(long row) {
+        return new Row(row);
+    }
+
+    /**
+     * Read a row into an immutable Map, as returned by SQLUtilities.loadImmutable().
+     *
+     * @param row the index of the row
+     * @return a frozen Map of column names to values
+     */
+    public Map<String, Object> get(long row) {
+        return row(row).toMap();
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param row the index of the row
+     * @param column the position of the column
+     * @return the value, or null
+     */
+    public Object getValue(long row, int column) {
+        return row(row).getValue(column);
+    }
+
+    /**
+     * @param row the index of the row
+     * @param column the position of the column
+     * @return true if the value is null
+     */
+    public boolean isNull(long row, int column) {
+        return row(row).isNull(column);
+    }
+
+    /**
+     * Get an integral value without boxing. A null value is returned as 0.
+     *
+     * @param row the index of the row
+     * @param column the position of the column
+     * @return the value
+     */
+    public long getLong(long row, int column) {
+        return row(row).getLong(column);
+    }
+
+    /**
+     * Get a numeric value as a double without boxing. A null value is returned as 0.
+     *
+     * @param row the index of the row
+     * @param column the position of the column
+     * @return the value
+     */
+    public double getDouble(long row, int column) {
+        return row(row).getDouble(column);
+    }
+
+    /**
+     * @return a sequential Stream of views of the rows, in order
+     */
+    public Stream<Row> rows() {
+        return LongStream.range(0, rowCount).mapToObj(this::row);
+    }
+
+    /**
+     * Scan a column as longs. Null values are returned as 0.
+     *
+     * @param column the position of the column
+     * @return a LongStream of the values in row order
+     */
+    public LongStream longs(final int column) {
+        return LongStream.range(0, rowCount).map(row -> getLong(row, column));
+    }
+
+    /**
+     * Scan a column as doubles. Null values are returned as 0.
+     *
+     * @param column the position of the column
+     * @return a DoubleStream of the values in row order
+     */
+    public DoubleStream doubles(final int column) {
+        return LongStream.range(0, rowCount).mapToDouble(row -> getDouble(row, column));
+    }
+
+    /**
+     * Scan a column.
+     *
+     * @param column the position of the column
+     * @return a Stream of the values in row order, including nulls
+     */
+    public Stream<Object> values(final int column) {
+        return LongStream.range(0, rowCount).mapToObj(row -> getValue(row, column));
+    }
+
+    /**
+     * Sort the rows on a column into a new file with an external merge sort. Runs of at most maxRowsInMemory rows are sorted in
+     * memory and written to temporary files next to target, and the runs are then merged into target. Only the sort keys of one
+     * run, and one row of each run while merging, are held in memory. Rows are copied without being decoded.
+     *
+     * Nulls sort first and the sort is stable.
+     *
+     * The run files are deleted when the sort finishes, but as there is no way to unmap a file before Java 9, the space they take
+     * is only released once the mappings used to merge them are garbage collected. Where a mapped file cannot be deleted, as on
+     * Windows, they are deleted when the JVM exits instead.
+     *
+     * @param column the name of the column to sort on, which must not hold binary or serialized values
+     * @param target the file to write the sorted rows to, which must not be the file of this ResultFile
+     * @param maxRowsInMemory the maximum number of rows to sort in memory at a time
+     * @return the opened sorted ResultFile
+     * @throws IOException if a file cannot be written
+     */
+    public ResultFile sort(String column, Path target, int maxRowsInMemory) throws IOException {
+        final int c = columnIndex(column);
+        if (types[c] == BYTES || types[c] == OBJECT) {
+            throw new IllegalArgumentException("column " + column + " cannot be sorted");
+        }
+
+        if (maxRowsInMemory < 1) {
+            throw new IllegalArgumentException("maxRowsInMemory must be at least 1");
+        }
+
+        if (Files.exists(target) && Files.isSameFile(target, file)) {
+            throw new IllegalArgumentException("cannot sort " + file + " into itself");
+        }
+
+        Path directory = target.toAbsolutePath().getParent();
+        List<Path> runs = new ArrayList<>();
+        try {
+            for (long start = 0; start < rowCount || start == 0; start += maxRowsInMemory) {
+                int n = (int) Math.min(maxRowsInMemory, rowCount - start);
+                SortKey[] keys = new SortKey[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = new SortKey(getValue(start + i, c), start + i, 0);
+                }
+
+                Arrays.sort(keys, (a, b) -> keyOrder.compare(a.key, b.key));
+                boolean onlyRun = start + n == rowCount;
+                Path run = onlyRun && runs.isEmpty() ? target : Files.createTempFile(directory, "sort", ".run");
+                if (run != target) {
+                    runs.add(run);
+                }
+
+                try (Writer writer = new Writer(run, names, types, segmentBits)) {
+                    for (SortKey key : keys) {
+                        copyRow(key.row, writer);
+                    }
+
+                    writer.finish();
+                }
+
+                if (run == target) {
+                    return open(target);
+                }
+            }
+
+            List<ResultFile> runFiles = new ArrayList<>();
+            try {
+                PriorityQueue<SortKey> queue = new PriorityQueue<>(runs.size(), (a, b) -> {
+                    int result = keyOrder.compare(a.key, b.key);
+                    return result != 0 ? result : Integer.compare(a.run, b.run);
+                });
+                for (Path run : runs) {
+                    ResultFile runFile = open(run);
+                    runFiles.add(runFile);
+                    queue.add(new SortKey(runFile.getValue(0, c), 0, runFiles.size() - 1));
+                }
+
+                try (Writer writer = new Writer(target, names, types, segmentBits)) {
+                    SortKey next;
+                    while ((next = queue.poll()) != null) {
+                        ResultFile runFile = runFiles.get(next.run);
+                        runFile.copyRow(next.row, writer);
+                        long row = next.row + 1;
+                        if (row < runFile.rowCount) {
+                            queue.add(new SortKey(runFile.getValue(row, c), row, next.run));
+                        }
+                    }
+
+                    writer.finish();
+                }
+            } finally {
+                for (ResultFile runFile : runFiles) {
+                    runFile.close();
+                }
+            }
+
+            return open(target);
+        } finally {
+            for (Path run : runs) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    // The run is still mapped and the platform does not allow deleting it yet.
+                    run.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked") // Callers only pass values of one sortable column, which are mutually comparable.
+    private static int compareKeys(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private void copyRow(long row, Writer writer) throws IOException {
+        long offset = rowOffset(row);
+        ByteBuffer segment = segment(offset);
+        int position = (int) (offset & segmentMask);
+        writer.copyRow(segment, position + 4, segment.getInt(position));
+    }
+
+    /**
+     * Close the file. Views and streams must not be used after the file is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "ResultFile[" + file + ", " + rowCount + " rows]";
+    }
+
+    private static final class SortKey {
+
+        private final Object key;
+        private final long row;
+        private final int run;
+
+        private SortKey(Object key, long row, int run) {
+            this.key = key;
+            this.row = row;
+            this.run = run;
+        }
+    }
+
+    /**
+     * A view of a row of a ResultFile. The positions of the values are found once, when the view is created, and each value is
+     * decoded from the mapped file when it is read.
+     */
+    public final class Row extends AbstractMap<String, Object> {
+
+        private final long row;
+        private final ByteBuffer segment;
+        private final int[] positions;
+
+        private Row(long row) {
+            this.row = row;
+            long offset = rowOffset(row);
+            segment = segment(offset);
+            int base = (int) (offset & segmentMask) + 4;
+            positions = new int[names.length];
+            int position = base + (names.length + 7) / 8;
+            for (int i = 0; i < positions.length; i++) {
+                if ((segment.get(base + (i >> 3)) & (1 << (i & 7))) != 0) {
+                    positions[i] = -1;
+                } else {
+                    positions[i] = position;
+                    position += width(segment, position, types[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the index of this row in the file
+         */
+        public long getRowIndex() {
+            return row;
+        }
+
+        /**
+         * @param column the position of the column
+         * @return true if the value is null
+         */
+        public boolean isNull(int column) {
+            return positions[column] < 0;
+        }
+
+        /**
+         * @param column the position of the column
+         * @return the value, or null
+         */
+        public Object getValue(int column) {
+            int position = positions[column];
+            return position < 0 ? null : decode(segment, position, types[column]);
+        }
+
+        /**
+         * Get an integral value without boxing. A null value is returned as 0.
+         *
+         * @param column the position of the column
+         * @return the value
+         */
+        public long getLong(int column) {
+            int position = positions[column];
+            if (position < 0) {
+                return 0;
+            }
+
+            switch (types[column]) {
+                case LONG:
+                    return segment.getLong(position);
+                case INT:
+                    return segment.getInt(position);
+                default:
+                    return ((Number) getValue(column)).longValue();
+            }
+        }
+
+        /**
+         * Get a numeric value as a double without boxing. A null value is returned as 0.
+         *
+         * @param column the position of the column
+         * @return the value
+         */
+        public double getDouble(int column) {
+            int position = positions[column];
+            if (position < 0) {
+                return 0;
+            }
+
+            switch (types[column]) {
+                case DOUBLE:
+                    return segment.getDouble(position);
+                case LONG:
+                    return segment.getLong(position);
+                case INT:
+                    return segment.getInt(position);
+                default:
+                    return ((Number) getValue(column)).doubleValue();
+            }
+        }
+
+        /**
+         * Get a string or binary value without copying it.
+         *
+         * @param column the position of the column
+         * @return a read-only ByteBuffer over the bytes of the value (UTF-8 for strings), or null if the value is null
+         * @throws IllegalArgumentException if the column does not hold strings or binary values
+         */
+        public ByteBuffer getBytes(int column) {
+            if (types[column] != STRING && types[column] != BYTES) {
+                throw new IllegalArgumentException("column " + names[column] + " does not hold strings or binary values");
+            }
+
+            int position = positions[column];
+            if (position < 0) {
+                return null;
+            }
+
+            ByteBuffer b = segment.asReadOnlyBuffer();
+            ((Buffer) b).limit(position + 4 + segment.getInt(position));
+            ((Buffer) b).position(position + 4);
+            return b.slice();
+        }
+
+        /**
+         * @return this row read into a frozen Map, as returned by SQLUtilities.loadImmutable()
+         */
+        public Map<String, Object> toMap() {
+            FixedMapMaker.FixedMap<String, Object> map = maker.make();
+            for (int i = 0; i < positions.length; i++) {
+                map.set(i, getValue(i));
+            }
+
+            return map.freeze();
+        }
+
+        @Override
+        public Object get(Object key) {
+            int column = maker.indexOf(key);
+            return column < 0 ? null : getValue(column);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return maker.indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return maker.distinctSize();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+
+                        private int next = advance(0);
+
+                        /**
+                         * Skip the columns whose names are repeated by later columns, as the row holds each name once.
+                         */
+                        private int advance(int column) {
+                            while (column < names.length && maker.isShadowed(column)) {
+                                column++;
+                            }
+
+                            return column;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(names[next], getValue(next));
+                            next = advance(next + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return maker.distinctSize();
+                }
+            };
+        }
+    }
+
+    /**
+     * @param className the name of a class as given by Class.getName(), which for an array is its descriptor
+     * @return true if values of the class may be stored with Java serialization
+     */
+    private static boolean isSerializable(String className) {
+        String name = className;
+        while (name.startsWith("[")) {
+            name = name.substring(1);
+        }
+
+        if (name.length() == 1) {
+            // An array of a primitive type.
+            return true;
+        }
+
+        if (name.startsWith("L") && name.endsWith(";")) {
+            name = name.substring(1, name.length() - 1);
+        }
+
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && serializablePackages.contains(name.substring(0, dot));
+    }
+
+    /**
+     * Serializes values, refusing classes that ValueInputStream would refuse to read back so that the failure happens when the
+     * file is written.
+     */
+    private static final class ValueOutputStream extends ObjectOutputStream {
+
+        private ValueOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void annotateClass(Class<?> c) throws IOException {
+            if (!isSerializable(c.getName())) {
+                throw new NotSerializableException(c.getName() + " cannot be stored in a result file");
+            }
+        }
+
+        @Override
+        protected void annotateProxyClass(Class<?> c) throws IOException {
+            throw new NotSerializableException("proxies cannot be stored in a result file");
+        }
+    }
+
+    /**
+     * Deserializes values, resolving only the classes that ValueOutputStream writes.
+     */
+    private static final class ValueInputStream extends ObjectInputStream {
+
+        private ValueInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isSerializable(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "not allowed in a result file");
+            }
+
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxies are not allowed in a result file");
+        }
+    }
+
+    /**
+     * Exposes the internal buffer of a ByteArrayOutputStream so that a row can be written without copying it.
+     */
+    private static final class RowBuffer extends ByteArrayOutputStream {
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Writes the header, rows, index and trailer of a file. Row offsets are written to a temporary file as rows are written and
+     * appended at the end, so the index does not have to fit in memory.
+     */
+    private static final class Writer implements Closeable {
+
+        private static final byte[] zeros = new byte[4096];
+
+        private final Path file;
+        private final Path indexFile;
+        private final DataOutputStream out;
+        private final DataOutputStream index;
+        private final long segmentSize;
+        private byte[] scratch = new byte[256];
+        private long position;
+        private long rowCount;
+        private boolean finished;
+
+        private Writer(Path file, String[] names, byte[] types, int segmentBits) throws IOException {
+            this.file = file;
+            this.segmentSize = 1L << segmentBits;
+            this.indexFile = Files.createTempFile(file.toAbsolutePath().getParent(), "index", ".tmp");
+            this.index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(segmentBits);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeByte(types[i]);
+                out.writeUTF(names[i]);
+            }
+
+            position = out.size();
+        }
+
+        private void pad(long count) throws IOException {
+            while (count > 0) {
+                int n = (int) Math.min(count, zeros.length);
+                out.write(zeros, 0, n);
+                position += n;
+                count -= n;
+            }
+        }
+
+        private void writeRow(byte[] row, int offset, int length) throws IOException {
+            long total = 4L + length;
+            if (total > segmentSize) {
+                throw new IOException("a row of " + length + " bytes is too large");
+            }
+
+            long room = segmentSize - (position & (segmentSize - 1));
+            if (total > room) {
+                pad(room);
+            }
+
+            index.writeLong(position);
+            out.writeInt(length);
+            out.write(row, offset, length);
+            position += total;
+            rowCount++;
+        }
+
+        private void copyRow(ByteBuffer segment, int position, int length) throws IOException {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+
+            ByteBuffer b = segment.duplicate();
+            ((Buffer) b).position(position);
+            b.get(scratch, 0, length);
+            writeRow(scratch, 0, length);
+        }
+
+        private void finish() throws IOException {
+            // Align the index so that no offset straddles a segment boundary.
+            pad((8 - (position & 7)) & 7);
+            long indexOffset = position;
+            index.close();
+            Files.copy(indexFile, out);
+            out.writeLong(rowCount);
+            out.writeLong(indexOffset);
+            out.close();
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                index.close();
+                out.close();
+                if (!finished) {
+                    Files.deleteIfExists(file);
+                }
+            } finally {
+                Files.deleteIfExists(indexFile);
+            }
+        }
+    }
+}
@@ -11,12 +11,18 @@
 package com.stackframe.sql;
 
 import com.stackframe.util.FixedMapMaker;
+import com.stackframe.util.FixedMapTable;
+import com.stackframe.util.Metrics;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -24,14 +30,30 @@ import java.util.Map;
 /**
  * Utility functions for use with the java.sql package.
  *
+ * The time taken by each load and the number of rows loaded are recorded by the "sql.load" timer and "sql.load.rows" counter of
+ * Metrics.
+ *
  * @author Gene McCulley
  */
 public class SQLUtilities {
 
+    private static final Metrics.Timer loadTimer = Metrics.timer("sql.load");
+    private static final Metrics.Counter loadedRows = Metrics.counter("sql.load.rows");
+
     private SQLUtilities() {
         // Inhibit construction as this class has only static functions.
     }
 
+    /**
+     * Record the time taken by a load, including executing the query, and the number of rows loaded. Together these give rows
+     * per second. Callers only take the start time and call this when Metrics.isEnabled() was true, so a load pays nothing for
+     * metrics that are off.
+     */
+    private static void recordLoad(long start, long rows) {
+        loadTimer.record(System.nanoTime() - start);
+        loadedRows.add(rows);
+    }
+
     private static String[] getColumnNames(ResultSetMetaData rsmd) throws SQLException {
         int columnCount = rsmd.getColumnCount();
         String[] names = new String[columnCount];
@@ -51,26 +73,167 @@ public class SQLUtilities {
      * @throws SQLException if a SQLException was thrown when executing the query
      */
     public static List<Map<String, Object>> load(PreparedStatement statement) throws SQLException {
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
         try (ResultSet rs = statement.executeQuery()) {
             List<Map<String, Object>> entries = new ArrayList<>();
             ResultSetMetaData rsmd = rs.getMetaData();
-            FixedMapMaker mapMaker = new FixedMapMaker(getColumnNames(rsmd));
+            FixedMapMaker<String> mapMaker = new FixedMapMaker<>(getColumnNames(rsmd));
             int columnCount = rsmd.getColumnCount();
             while (rs.next()) {
-                Map<String, Object> map = mapMaker.make();
-                for (int i = 1; i < columnCount + 1; i++) {
-                    String name = rsmd.getColumnName(i);
-                    Object value = rs.getObject(i);
-                    map.put(name, value);
+                FixedMapMaker.FixedMap<String, Object> map = mapMaker.make();
+                for (int i = 0; i < columnCount; i++) {
+                    map.set(i, rs.getObject(i + 1));
                 }
 
                 entries.add(map);
             }
 
+            if (timed) {
+                recordLoad(start, entries.size());
+            }
+
             return entries;
         }
     }
 
+    /**
+     * Given a PreparedStatement, execute it and load all of the values into an immutable List of immutable Map objects, keyed by
+     * column name. The result is safe to share between threads (e.g., in a cache) without copying.
+     *
+     * @param statement the PreparedStatement to execute
+     * @return an immutable List of immutable Map objects where keys are column names and values are the values retrieved from the
+     * SQL query
+     * @throws SQLException if a SQLException was thrown when executing the query
+     */
+    public static List<Map<String, Object>> loadImmutable(PreparedStatement statement) throws SQLException {
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        try (ResultSet rs = statement.executeQuery()) {
+            ArrayList<Map<String, Object>> entries = new ArrayList<>();
+            ResultSetMetaData rsmd = rs.getMetaData();
+            FixedMapMaker<String> mapMaker = new FixedMapMaker<>(getColumnNames(rsmd));
+            int columnCount = rsmd.getColumnCount();
+            while (rs.next()) {
+                FixedMapMaker.FixedMap<String, Object> map = mapMaker.make();
+                for (int i = 0; i < columnCount; i++) {
+                    map.set(i, rs.getObject(i + 1));
+                }
+
+                entries.add(map.freeze());
+            }
+
+            entries.trimToSize();
+            if (timed) {
+                recordLoad(start, entries.size());
+            }
+
+            return Collections.unmodifiableList(entries);
+        }
+    }
+
+    private static Class<?> columnType(int sqlType) {
+        switch (sqlType) {
+            case Types.BIGINT:
+                return long.class;
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return int.class;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return double.class;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return boolean.class;
+            default:
+                return Object.class;
+        }
+    }
+
+    /**
+     * Given a PreparedStatement, execute it and load all of the values into a FixedMapTable, keyed by column name. Integer,
+     * floating point and boolean columns are stored as primitives, so this takes much less memory than load() for large results.
+     *
+     * @param statement the PreparedStatement to execute
+     * @return a FixedMapTable where keys are column names and values are the values retrieved from the SQL query
+     * @throws SQLException if a SQLException was thrown when executing the query
+     */
+    public static FixedMapTable<String> loadTable(PreparedStatement statement) throws SQLException {
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        try (ResultSet rs = statement.executeQuery()) {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int columnCount = rsmd.getColumnCount();
+            Class<?>[] types = new Class<?>[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                types[i] = columnType(rsmd.getColumnType(i + 1));
+            }
+
+            FixedMapTable<String> table = new FixedMapTable<>(new FixedMapMaker<>(getColumnNames(rsmd)), types);
+            while (rs.next()) {
+                int row = table.appendRow();
+                for (int i = 0; i < columnCount; i++) {
+                    Class<?> type = types[i];
+                    if (type == long.class) {
+                        long value = rs.getLong(i + 1);
+                        if (!rs.wasNull()) {
+                            table.setLong(row, i, value);
+                        }
+                    } else if (type == int.class) {
+                        int value = rs.getInt(i + 1);
+                        if (!rs.wasNull()) {
+                            table.setInt(row, i, value);
+                        }
+                    } else if (type == double.class) {
+                        double value = rs.getDouble(i + 1);
+                        if (!rs.wasNull()) {
+                            table.setDouble(row, i, value);
+                        }
+                    } else if (type == boolean.class) {
+                        boolean value = rs.getBoolean(i + 1);
+                        if (!rs.wasNull()) {
+                            table.setValue(row, i, value);
+                        }
+                    } else {
+                        table.setValue(row, i, rs.getObject(i + 1));
+                    }
+                }
+            }
+
+            table.trimToSize();
+            if (timed) {
+                recordLoad(start, table.size());
+            }
+
+            return table;
+        }
+    }
+
+    /**
+     * Given a PreparedStatement, execute it and write all of the values to a binary file instead of loading them into memory. This
+     * is for results that are too large for the heap or that have to be read more than once or sorted.
+     *
+     * @param statement the PreparedStatement to execute
+     * @param file the file to write
+     * @return a ResultFile for reading the values back
+     * @throws SQLException if a SQLException was thrown when executing the query
+     * @throws IOException if the file cannot be written
+     */
+    public static ResultFile spill(PreparedStatement statement, Path file) throws SQLException, IOException {
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        try (ResultSet rs = statement.executeQuery()) {
+            ResultFile result = ResultFile.write(rs, file);
+            if (timed) {
+                recordLoad(start, result.getRowCount());
+            }
+
+            return result;
+        }
+    }
+
     /**
      * Given a PreparedStatement, execute it and load all of the values into POJOs of a specified type.
      *
@@ -80,6 +243,8 @@ public class SQLUtilities {
      * @throws AssertionError if the POJO does not have an accessible constructor or is missing a field named after a column
      */
     public static <C> List<C> load(PreparedStatement statement, Class<C> type) throws SQLException {
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
         try (ResultSet rs = statement.executeQuery()) {
             List<C> entries = new ArrayList<>();
             ResultSetMetaData rsmd = rs.getMetaData();
@@ -100,10 +265,36 @@ public class SQLUtilities {
                 }
             }
 
+            if (timed) {
+                recordLoad(start, entries.size());
+            }
+
             return entries;
         }
     }
 
+    /**
+     * Bind parameters to a PreparedStatement in order with setObject(). A java.util.Date that is not already one of the java.sql
+     * types is converted to a java.sql.Date.
+     *
+     * @param statement the PreparedStatement to bind parameters to
+     * @param parameters the parameters, one for each placeholder in the statement
+     * @return statement, for convenience
+     * @throws SQLException if a parameter cannot be bound
+     */
+    public static PreparedStatement bind(PreparedStatement statement, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object parameter = parameters[i];
+            if (parameter instanceof Date && !(parameter instanceof java.sql.Timestamp || parameter instanceof java.sql.Time)) {
+                parameter = convert((Date) parameter);
+            }
+
+            statement.setObject(i + 1, parameter);
+        }
+
+        return statement;
+    }
+
     /**
      * Given a java.util.Date, return a java.sql.Date.
      *
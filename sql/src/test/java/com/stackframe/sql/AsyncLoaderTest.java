@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Tests for AsyncLoader.
+ *
+ * @author mcculley
+ */
+public class AsyncLoaderTest extends TestCase {
+
+    private static ResultSet one() {
+        return FakeJDBC.resultSet(new String[]{"n"}, new int[]{Types.INTEGER}, new Object[][]{{1}});
+    }
+
+    public void testTimeoutCancelsRunningStatement() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final List<FakeJDBC.Execution> executions = new ArrayList<>();
+        FakeJDBC.Database database = new FakeJDBC.Database() {
+            @Override
+            public ResultSet executeQuery(FakeJDBC.Execution execution) throws SQLException {
+                synchronized (executions) {
+                    executions.add(execution);
+                }
+
+                started.countDown();
+                try {
+                    // Run until the loader cancels the statement, as a slow query would.
+                    if (!execution.cancelled.await(10, TimeUnit.SECONDS)) {
+                        throw new AssertionError("statement was never cancelled");
+                    }
+                } catch (InterruptedException ie) {
+                    throw new SQLException(ie);
+                }
+
+                throw new SQLException("cancelled");
+            }
+        };
+        try (AsyncLoader loader = new AsyncLoader(FakeJDBC.dataSource(database), 4)) {
+            // Allow long enough for the query to start even on a cold JVM, as one that times out before starting is never run.
+            CompletableFuture<?> result = loader.loadAsync(2, TimeUnit.SECONDS, "SELECT slow");
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("query should have timed out");
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof TimeoutException);
+            }
+
+            FakeJDBC.Execution execution = executions.get(0);
+            assertTrue(execution.cancelled.await(10, TimeUnit.SECONDS));
+            assertTrue("the driver should also be given the timeout", execution.queryTimeout > 0);
+            assertFalse("Statement.cancel() must not run on the shared timer thread",
+                    execution.cancelledOn.getName().startsWith("AsyncLoader-timeout"));
+        }
+    }
+
+    public void testQueryNotStartedBeforeTimeoutIsNeverRun() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+        FakeJDBC.Database database = new FakeJDBC.Database() {
+            @Override
+            public ResultSet executeQuery(FakeJDBC.Execution execution) throws SQLException {
+                executed.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    throw new SQLException(ie);
+                }
+
+                return one();
+            }
+        };
+        try (AsyncLoader loader = new AsyncLoader(FakeJDBC.dataSource(database), 1)) {
+            CompletableFuture<?> blocker = loader.loadAsync("SELECT blocker");
+            CompletableFuture<?> queued = loader.loadAsync(50, TimeUnit.MILLISECONDS, "SELECT queued");
+            try {
+                queued.get(10, TimeUnit.SECONDS);
+                fail("query should have timed out");
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof TimeoutException);
+            }
+
+            release.countDown();
+            assertEquals(1, ((List<?>) blocker.get(10, TimeUnit.SECONDS)).size());
+            Thread.sleep(50);
+            assertEquals(1, executed.get());
+        }
+    }
+
+    public void testConcurrencyIsBounded() throws Exception {
+        final int maximum = 3;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        FakeJDBC.Database database = new FakeJDBC.Database() {
+            @Override
+            public ResultSet executeQuery(FakeJDBC.Execution execution) throws SQLException {
+                int now = running.incrementAndGet();
+                mostRunning.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ie) {
+                    throw new SQLException(ie);
+                } finally {
+                    running.decrementAndGet();
+                }
+
+                return one();
+            }
+        };
+        try (AsyncLoader loader = new AsyncLoader(FakeJDBC.dataSource(database), maximum)) {
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final int n = i;
+                results.add(loader.queryAsync(0, TimeUnit.MILLISECONDS, new AsyncLoader.StatementLoader<Integer>() {
+                    @Override
+                    public Integer load(PreparedStatement statement) throws SQLException {
+                        statement.executeQuery().close();
+                        return n;
+                    }
+                }, "SELECT ?", i));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, (int) results.get(i).get(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(maximum, mostRunning.get());
+        }
+    }
+}
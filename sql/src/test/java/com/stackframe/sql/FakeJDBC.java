@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import javax.sql.DataSource;
+
+/**
+ * In-memory stand-ins for the JDBC objects used by this package, built with java.lang.reflect.Proxy so that tests do not need a
+ * database. Methods that are not simulated return null, zero or false.
+ *
+ * @author mcculley
+ */
+final class FakeJDBC {
+
+    /**
+     * Produces the results of executed statements.
+     */
+    interface Database {
+
+        /**
+         * @param execution the statement being executed
+         * @return the result of the query
+         * @throws SQLException to fail the query
+         */
+        ResultSet executeQuery(Execution execution) throws SQLException;
+    }
+
+    /**
+     * One execution of a PreparedStatement.
+     */
+    static final class Execution {
+
+        final String sql;
+        final Map<Integer, Object> parameters = new HashMap<>();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        volatile Thread cancelledOn;
+        volatile int queryTimeout;
+
+        private Execution(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private FakeJDBC() {
+        // Inhibit construction as this is a utility class.
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeJDBC.class.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                    default:
+                        Object result = handler.invoke(proxy, method, args);
+                        return result == null ? defaultValue(method.getReturnType()) : result;
+                }
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param database the Database that executes queries
+     * @return a DataSource whose connections run queries against database
+     */
+    static DataSource dataSource(final Database database) {
+        final Connection connection = proxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("prepareStatement") ? statement(database, (String) args[0]) : null;
+            }
+        });
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getConnection") ? connection : null;
+            }
+        });
+    }
+
+    private static PreparedStatement statement(final Database database, String sql) {
+        final Execution execution = new Execution(sql);
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                switch (method.getName()) {
+                    case "setObject":
+                        execution.parameters.put((Integer) args[0], args[1]);
+                        return null;
+                    case "setQueryTimeout":
+                        execution.queryTimeout = (Integer) args[0];
+                        return null;
+                    case "cancel":
+                        execution.cancelledOn = Thread.currentThread();
+                        execution.cancelled.countDown();
+                        return null;
+                    case "executeQuery":
+                        return database.executeQuery(execution);
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Make a ResultSet holding some rows.
+     *
+     * @param names the names of the columns
+     * @param types the java.sql.Types of the columns
+     * @param rows the values of the rows, which are returned as they are by the getters, so they must be of the types the getters
+     * return
+     * @return a ResultSet
+     */
+    static ResultSet resultSet(final String[] names, final int[] types, final Object[][] rows) {
+        final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getColumnCount":
+                        return names.length;
+                    case "getColumnName":
+                    case "getColumnLabel":
+                        return names[(Integer) args[0] - 1];
+                    case "getColumnType":
+                        return types[(Integer) args[0] - 1];
+                    default:
+                        return null;
+                }
+            }
+        });
+        return proxy(ResultSet.class, new InvocationHandler() {
+            private int row = -1;
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                switch (name) {
+                    case "getMetaData":
+                        return metaData;
+                    case "next":
+                        return ++row < rows.length;
+                    case "wasNull":
+                        return wasNull;
+                    default:
+                        if (!name.startsWith("get") || args == null || !(args[0] instanceof Integer)) {
+                            return null;
+                        }
+
+                        Object value = rows[row][(Integer) args[0] - 1];
+                        wasNull = value == null;
+                        if (value instanceof Number && method.getReturnType().isPrimitive()) {
+                            Number n = (Number) value;
+                            Class<?> type = method.getReturnType();
+                            return type == long.class ? (Object) n.longValue() : type == int.class ? (Object) n.intValue()
+                                    : (Object) n.doubleValue();
+                        }
+
+                        return value;
+                }
+            }
+        });
+    }
+}
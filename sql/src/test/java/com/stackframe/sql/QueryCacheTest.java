@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Tests for QueryCache.
+ *
+ * @author mcculley
+ */
+public class QueryCacheTest extends TestCase {
+
+    private final AtomicInteger executions = new AtomicInteger();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    /**
+     * A database that answers every query with as many rows of two columns as its first parameter, after waiting for release.
+     */
+    private final FakeJDBC.Database database = new FakeJDBC.Database() {
+        @Override
+        public ResultSet executeQuery(FakeJDBC.Execution execution) throws SQLException {
+            executions.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                throw new SQLException(ie);
+            }
+
+            Object parameter = execution.parameters.get(1);
+            int count = parameter instanceof Integer ? (Integer) parameter : 1;
+            Object[][] rows = new Object[count][];
+            for (int i = 0; i < count; i++) {
+                rows[i] = new Object[]{i, execution.sql};
+            }
+
+            return FakeJDBC.resultSet(new String[]{"n", "sql"}, new int[]{Types.INTEGER, Types.VARCHAR}, rows);
+        }
+    };
+
+    public void testConcurrentMissesRunOneQuery() throws Exception {
+        final QueryCache cache = new QueryCache(FakeJDBC.dataSource(database), 1000, 0, TimeUnit.SECONDS);
+        final int threads = 8;
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Map<String, Object>>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<List<Map<String, Object>>>() {
+                    @Override
+                    public List<Map<String, Object>> call() throws SQLException {
+                        return cache.load("SELECT ?", 3);
+                    }
+                }));
+            }
+
+            // Hold the one query until every other lookup is waiting on it.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (cache.getWaitCount() < threads - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            release.countDown();
+            List<Map<String, Object>> first = results.get(0).get(10, TimeUnit.SECONDS);
+            assertEquals(3, first.size());
+            for (Future<List<Map<String, Object>>> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(threads - 1, cache.getWaitCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0.0, cache.getHitRate());
+
+        cache.load("SELECT ?", 3);
+        assertEquals(1, executions.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    public void testEvictsLeastRecentlyUsedByWeight() throws SQLException {
+        QueryCache cache = new QueryCache(FakeJDBC.dataSource(database), 2, QueryCache.ENTRIES, 0, TimeUnit.SECONDS);
+        cache.load("a");
+        cache.load("b");
+        cache.load("a");
+        cache.load("c");
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+
+        // b was the least recently used, so it is the one that has to be queried again.
+        executions.set(0);
+        cache.load("a");
+        cache.load("c");
+        assertEquals(0, executions.get());
+        cache.load("b");
+        assertEquals(1, executions.get());
+    }
+
+    public void testResultHeavierThanMaximumIsNotKept() throws SQLException {
+        // Two rows of two columns weigh five cells, more than the whole cache may hold.
+        QueryCache cache = new QueryCache(FakeJDBC.dataSource(database), 4, 0, TimeUnit.SECONDS);
+        assertEquals(1, cache.load("SELECT ?", 1).size());
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.load("SELECT ?", 2).size());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    public void testChangingParameterAfterLoadDoesNotChangeKey() throws SQLException {
+        QueryCache cache = new QueryCache(FakeJDBC.dataSource(database), 1000, 0, TimeUnit.SECONDS);
+        Timestamp when = new Timestamp(1000);
+        cache.load("SELECT ?", when);
+        when.setTime(2000);
+        cache.load("SELECT ?", new Timestamp(1000));
+        assertEquals(1, executions.get());
+        assertEquals(1, cache.getHitCount());
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import junit.framework.TestCase;
+
+/**
+ * Tests for ResultFile.
+ *
+ * @author mcculley
+ */
+public class ResultFileTest extends TestCase {
+
+    private static final String[] ALL_NAMES = {"long", "int", "double", "boolean", "string", "bytes", "timestamp", "date", "time",
+        "decimal", "object"};
+    private static final int[] ALL_TYPES = {Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.BOOLEAN, Types.VARCHAR,
+        Types.VARBINARY, Types.TIMESTAMP, Types.DATE, Types.TIME, Types.DECIMAL, Types.OTHER};
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("ResultFileTest");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(directory);
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                found.add(file.getFileName());
+            }
+        }
+
+        return found;
+    }
+
+    private static void assertValueEquals(Object expected, Object actual) {
+        if (expected instanceof byte[]) {
+            assertTrue(Arrays.equals((byte[]) expected, (byte[]) actual));
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testRoundTripsEveryType() throws Exception {
+        Timestamp timestamp = new Timestamp(1234567890123L);
+        timestamp.setNanos(123456789);
+        Object[] values = {Long.MIN_VALUE, -42, Math.PI, true, "héllo ☃", new byte[]{0, 1, -1, 127},
+            timestamp, new java.sql.Date(86400000L * 365), new Time(3600000L), new BigDecimal("-12345678901234567890.0042"),
+            UUID.randomUUID()};
+        Object[][] rows = {values, new Object[values.length]};
+        Path file = directory.resolve("all");
+        try (ResultFile result = ResultFile.write(FakeJDBC.resultSet(ALL_NAMES, ALL_TYPES, rows), file)) {
+            assertEquals(2, result.getRowCount());
+            assertEquals(ALL_NAMES.length, result.getColumnCount());
+            for (int c = 0; c < values.length; c++) {
+                assertValueEquals(values[c], result.getValue(0, c));
+                assertValueEquals(values[c], result.get(0).get(ALL_NAMES[c]));
+                assertFalse(result.isNull(0, c));
+                assertNull(result.getValue(1, c));
+                assertTrue(result.isNull(1, c));
+            }
+
+            assertEquals(Long.MIN_VALUE, result.getLong(0, 0));
+            assertEquals(-42, result.getLong(0, 1));
+            assertEquals(Math.PI, result.getDouble(0, 2));
+            assertEquals(0, result.getLong(1, 0));
+            assertEquals(values[4], new String(toArray(result.row(0).getBytes(4)), "UTF-8"));
+        }
+
+        // The file can be opened again, as another reader would.
+        try (ResultFile result = ResultFile.open(file)) {
+            assertEquals(timestamp, result.getValue(0, 6));
+        }
+    }
+
+    private static byte[] toArray(java.nio.ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A class outside the packages whose values may be serialized into a result file.
+     */
+    private static final class Custom implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    public void testRefusesToSerializeOtherClasses() throws SQLException {
+        ResultSet rs = FakeJDBC.resultSet(new String[]{"object"}, new int[]{Types.OTHER}, new Object[][]{{new Custom()}});
+        try {
+            ResultFile.write(rs, directory.resolve("custom"));
+            fail("a value of an application class should not be serialized");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testRowsAcrossSegmentBoundaries() throws Exception {
+        // With 256 byte segments, rows of up to 200 bytes often do not fit in what is left of a segment.
+        Random random = new Random(7);
+        Object[][] rows = new Object[500][];
+        for (int i = 0; i < rows.length; i++) {
+            char[] chars = new char[random.nextInt(190)];
+            Arrays.fill(chars, (char) ('a' + i % 26));
+            rows[i] = new Object[]{(long) i, new String(chars)};
+        }
+
+        ResultSet rs = FakeJDBC.resultSet(new String[]{"id", "text"}, new int[]{Types.BIGINT, Types.VARCHAR}, rows);
+        try (ResultFile result = ResultFile.write(rs, directory.resolve("segments"), 8)) {
+            assertEquals(rows.length, result.getRowCount());
+            assertTrue(Files.size(directory.resolve("segments")) > 100 * 256);
+            for (int i = 0; i < rows.length; i++) {
+                Map<String, Object> row = result.get(i);
+                assertEquals(rows[i][0], row.get("id"));
+                assertEquals(rows[i][1], row.get("text"));
+            }
+
+            assertEquals(rows.length * (rows.length - 1L) / 2, result.longs(0).sum());
+        }
+
+        char[] tooLong = new char[300];
+        rs = FakeJDBC.resultSet(new String[]{"text"}, new int[]{Types.VARCHAR}, new Object[][]{{new String(tooLong)}});
+        try {
+            ResultFile.write(rs, directory.resolve("toolong"), 8);
+            fail("a row larger than a segment cannot be written");
+        } catch (IOException expected) {
+        }
+
+        assertFalse(Files.exists(directory.resolve("toolong")));
+    }
+
+    public void testExternalSortMergesRuns() throws Exception {
+        Random random = new Random(11);
+        Object[][] rows = new Object[1000][];
+        for (int i = 0; i < rows.length; i++) {
+            // Few distinct keys, and some nulls, so that stability and null ordering are exercised.
+            rows[i] = new Object[]{i, random.nextInt(10) == 0 ? null : "key" + random.nextInt(50)};
+        }
+
+        ResultSet rs = FakeJDBC.resultSet(new String[]{"position", "key"}, new int[]{Types.INTEGER, Types.VARCHAR}, rows);
+        Path target = directory.resolve("sorted");
+        try (ResultFile result = ResultFile.write(rs, directory.resolve("unsorted"), 12);
+                ResultFile sorted = result.sort("key", target, 64)) {
+            assertEquals(rows.length, sorted.getRowCount());
+            for (long row = 1; row < sorted.getRowCount(); row++) {
+                String previous = (String) sorted.getValue(row - 1, 1);
+                String key = (String) sorted.getValue(row, 1);
+                int order = previous == null ? (key == null ? 0 : -1) : key == null ? 1 : previous.compareTo(key);
+                assertTrue(order <= 0);
+                if (order == 0) {
+                    assertTrue("the sort should be stable", sorted.getLong(row - 1, 0) < sorted.getLong(row, 0));
+                }
+            }
+
+            assertEquals(rows.length * (rows.length - 1L) / 2, sorted.longs(0).sum());
+            // Only the source and target are left; the runs and index files have been deleted.
+            assertEquals(2, files().size());
+            assertTrue(files().contains(target.getFileName()));
+
+            try {
+                result.sort("key", directory.resolve(".").resolve("unsorted"), 64);
+                fail("a file cannot be sorted into itself");
+            } catch (IllegalArgumentException expected) {
+            }
+
+        }
+
+        try (ResultFile unchanged = ResultFile.open(directory.resolve("unsorted"))) {
+            assertEquals(rows.length, unchanged.getRowCount());
+        }
+    }
+
+    public void testSortOfOneRun() throws Exception {
+        Object[][] rows = {{3}, {1}, {2}};
+        ResultSet rs = FakeJDBC.resultSet(new String[]{"n"}, new int[]{Types.INTEGER}, rows);
+        try (ResultFile result = ResultFile.write(rs, directory.resolve("small"));
+                ResultFile sorted = result.sort("n", directory.resolve("sorted"), 10)) {
+            assertEquals(Arrays.asList(1L, 2L, 3L), Arrays.asList(sorted.longs(0).boxed().toArray()));
+        }
+    }
+
+    public void testRepeatedColumnNames() throws Exception {
+        // A join of two tables that both have an id column, which JDBC reports under the same name twice.
+        Object[][] rows = {{1, "b", 20}, {2, "a", 10}, {3, "c", null}};
+        ResultSet rs = FakeJDBC.resultSet(new String[]{"id", "name", "id"}, new int[]{Types.INTEGER, Types.VARCHAR, Types.INTEGER},
+                rows);
+        try (ResultFile written = ResultFile.write(rs, directory.resolve("joined"));
+                ResultFile result = ResultFile.open(directory.resolve("joined"))) {
+            assertEquals(3, result.getColumnCount());
+            assertEquals(2, result.columnIndex("id"));
+
+            // Positions reach every column, but as with SQLUtilities.load() the last column of a name wins a lookup by name.
+            assertEquals(1, result.getValue(0, 0));
+            assertEquals(20, result.getValue(0, 2));
+            Map<String, Object> row = result.get(0);
+            assertEquals(20, row.get("id"));
+            assertEquals(2, row.size());
+            assertEquals(2, result.row(0).size());
+            assertEquals(2, result.row(0).entrySet().size());
+
+            Map<String, Object> expected = new HashMap<>();
+            expected.put("id", 20);
+            expected.put("name", "b");
+            assertEquals(expected, result.row(0));
+            assertEquals(expected, row);
+
+            expected.put("id", null);
+            expected.put("name", "c");
+            assertEquals(expected, result.row(2));
+
+            try (ResultFile sorted = result.sort("id", directory.resolve("sorted"), 2)) {
+                assertEquals(Arrays.asList(3, 2, 1), Arrays.asList(sorted.values(0).toArray()));
+                assertEquals(10, sorted.get(1).get("id"));
+                assertEquals(2, sorted.get(1).size());
+            }
+        }
+    }
+}
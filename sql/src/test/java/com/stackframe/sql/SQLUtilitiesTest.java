@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.sql;
+
+import com.stackframe.util.FixedMapTable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests for SQLUtilities.
+ *
+ * @author Gene McCulley
+ */
+public class SQLUtilitiesTest extends TestCase {
+
+    /**
+     * @return a statement whose result has a repeated column name, as SELECT a.id, a.name, b.id FROM a JOIN b would
+     */
+    private static PreparedStatement join() throws SQLException {
+        FakeJDBC.Database database = new FakeJDBC.Database() {
+            @Override
+            public ResultSet executeQuery(FakeJDBC.Execution execution) {
+                return FakeJDBC.resultSet(new String[]{"id", "name", "id"}, new int[]{Types.INTEGER, Types.VARCHAR, Types.BIGINT},
+                        new Object[][]{{1, "one", 10L}, {2, "two", null}});
+            }
+        };
+        return FakeJDBC.dataSource(database).getConnection().prepareStatement("SELECT a.id, a.name, b.id FROM a JOIN b");
+    }
+
+    private static void assertLastColumnWins(List<Map<String, Object>> rows) {
+        assertEquals(2, rows.size());
+        assertEquals(2, rows.get(0).size());
+        assertEquals(10L, rows.get(0).get("id"));
+        assertEquals("one", rows.get(0).get("name"));
+        assertNull(rows.get(1).get("id"));
+        assertTrue(rows.get(1).containsKey("id"));
+    }
+
+    public void testLoadWithRepeatedColumnName() throws SQLException {
+        assertLastColumnWins(SQLUtilities.load(join()));
+    }
+
+    public void testLoadImmutableWithRepeatedColumnName() throws SQLException {
+        assertLastColumnWins(SQLUtilities.loadImmutable(join()));
+    }
+
+    public void testLoadTableWithRepeatedColumnName() throws SQLException {
+        FixedMapTable<String> table = SQLUtilities.loadTable(join());
+        assertEquals(3, table.getColumnCount());
+        assertEquals(1, table.getInt(0, 0));
+        assertEquals(10L, table.getLong(0, 2));
+        assertLastColumnWins(table);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.swing;
+
+import javax.swing.table.AbstractTableModel;
+import java.awt.EventQueue;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A TableModel over a large number of rows that are fetched a page at a time, on demand, from a PageSource. Only the pages that
+ * have been looked at recently are kept in memory, so a view of a million rows opens as soon as the row count is known and
+ * scrolling only fetches the pages that come into view.
+ *
+ * Pages are fetched on a background executor. Until a page arrives, getValueAt() returns null for its cells; when it arrives, the
+ * rows are updated with a TableModelEvent so the view repaints them. The page after a fetched page is fetched too, so that
+ * scrolling down does not usually wait.
+ *
+ * Like other Swing models, a PagedTableModel must only be used on the event dispatch thread.
+ *
+ * @author mcculley
+ */
+public class PagedTableModel extends AbstractTableModel {
+
+    private static final Logger logger = Logger.getLogger(PagedTableModel.class.getName());
+
+    /**
+     * A source of rows for a PagedTableModel, such as a query with LIMIT and OFFSET clauses.
+     */
+    public interface PageSource {
+
+        /**
+         * Fetch a range of rows. This is called on a background thread.
+         *
+         * @param firstRow the index of the first row to fetch
+         * @param rowCount the number of rows to fetch
+         * @return the rows, each holding one value per column; fewer than rowCount rows means the rest do not exist
+         * @throws Exception if the rows cannot be fetched
+         */
+        List<Object[]> fetch(int firstRow, int rowCount) throws Exception;
+    }
+
+    private final PageSource source;
+    private final String[] columnNames;
+    private final int pageSize;
+    private final Executor executor;
+    private final Map<Integer, List<Object[]>> pages;
+    private final Set<Integer> requested = new HashSet<>();
+    private int rowCount;
+    private int generation;
+
+    /**
+     * Create a PagedTableModel.
+     *
+     * @param source the source of rows
+     * @param columnNames the names of the columns
+     * @param rowCount the number of rows
+     * @param pageSize the number of rows to fetch at a time
+     * @param cachedPages the number of pages to keep in memory; this should cover more rows than are visible at once
+     * @param executor the executor to fetch pages on
+     */
+    public PagedTableModel(PageSource source, String[] columnNames, int rowCount, int pageSize, final int cachedPages,
+            Executor executor) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount must not be negative");
+        }
+
+        if (pageSize < 1 || cachedPages < 2) {
+            throw new IllegalArgumentException("pageSize must be at least 1 and cachedPages at least 2");
+        }
+
+        this.source = source;
+        this.columnNames = columnNames.clone();
+        this.rowCount = rowCount;
+        this.pageSize = pageSize;
+        this.executor = executor;
+        this.pages = new LinkedHashMap<Integer, List<Object[]>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    /**
+     * Create a PagedTableModel that fetches pages of 256 rows on the shared background executor and keeps 32 pages in memory.
+     *
+     * @param source the source of rows
+     * @param columnNames the names of the columns
+     * @param rowCount the number of rows
+     */
+    public PagedTableModel(PageSource source, String[] columnNames, int rowCount) {
+        this(source, columnNames, rowCount, 256, 32, SwingUtilities.backgroundExecutor());
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * @param row the index of a row
+     * @return true if the row has been fetched and is in memory
+     */
+    public boolean isLoaded(int row) {
+        return pages.containsKey(row / pageSize);
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / pageSize;
+        List<Object[]> rows = pages.get(page);
+        if (rows == null) {
+            request(page);
+            request(page + 1);
+            return null;
+        }
+
+        int offset = row - page * pageSize;
+        return offset < rows.size() ? rows.get(offset)[column] : null;
+    }
+
+    private void request(final int page) {
+        if (page * (long) pageSize >= rowCount || pages.containsKey(page) || !requested.add(page)) {
+            return;
+        }
+
+        final int fetchGeneration = generation;
+        final int firstRow = page * pageSize;
+        final int count = Math.min(pageSize, rowCount - firstRow);
+        executor.execute(() -> {
+            try {
+                List<Object[]> rows = source.fetch(firstRow, count);
+                EventQueue.invokeLater(() -> pageArrived(fetchGeneration, page, rows));
+            } catch (Exception e) {
+                EventQueue.invokeLater(() -> {
+                    if (fetchGeneration == generation) {
+                        pageFailed(page, e);
+                    }
+                });
+            }
+        });
+    }
+
+    private void pageArrived(int fetchGeneration, int page, List<Object[]> rows) {
+        if (fetchGeneration != generation) {
+            return;
+        }
+
+        requested.remove(page);
+        pages.put(page, rows);
+        int firstRow = page * pageSize;
+        int lastRow = Math.min(firstRow + pageSize, rowCount) - 1;
+        if (lastRow >= firstRow) {
+            fireTableRowsUpdated(firstRow, lastRow);
+        }
+    }
+
+    /**
+     * Called on the event dispatch thread when a page cannot be fetched. The page is not fetched again until refresh() is called.
+     * The default implementation logs the exception.
+     *
+     * @param page the index of the page
+     * @param e the exception thrown by the PageSource
+     */
+    protected void pageFailed(int page, Exception e) {
+        logger.log(Level.WARNING, "could not fetch page " + page, e);
+    }
+
+    /**
+     * Discard all fetched pages, e.g. because the underlying data has changed. Fetches already in progress are ignored when they
+     * complete.
+     *
+     * @param rowCount the new number of rows
+     */
+    public void refresh(int rowCount) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount must not be negative");
+        }
+
+        generation++;
+        pages.clear();
+        requested.clear();
+        this.rowCount = rowCount;
+        fireTableDataChanged();
+    }
+}
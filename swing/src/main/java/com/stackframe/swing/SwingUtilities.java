@@ -14,6 +14,17 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Utilities that make dealing with Swing easier.
@@ -22,6 +33,8 @@ import java.awt.event.KeyEvent;
  */
 public class SwingUtilities {
 
+    private static final Logger logger = Logger.getLogger(SwingUtilities.class.getName());
+
     private SwingUtilities() {
         // Inhibit construction as this is a utility class.
     }
@@ -40,4 +53,183 @@ public class SwingUtilities {
             KeyStroke.getKeyStroke(KeyEvent.VK_W, toolkit.getMenuShortcutKeyMask()), 
             JComponent.WHEN_IN_FOCUSED_WINDOW);
     }
+
+    private static class BackgroundExecutorHolder {
+
+        private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SwingUtilities-background-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the shared executor used for background work when none is supplied. Its threads are daemon threads, so it does not keep
+     * an application from exiting.
+     *
+     * @return the shared background executor
+     */
+    public static ExecutorService backgroundExecutor() {
+        return BackgroundExecutorHolder.executor;
+    }
+
+    /**
+     * Receives the results of loadInBackground() on the event dispatch thread.
+     *
+     * @param <T> the type of item loaded
+     */
+    public interface ChunkHandler<T> {
+
+        /**
+         * Called with the items loaded since the previous chunk. Items are delivered in the order they were loaded.
+         *
+         * @param items the items, never empty
+         */
+        void chunk(List<T> items);
+
+        /**
+         * Called once after the last chunk when loading has finished normally.
+         */
+        default void done() {
+        }
+
+        /**
+         * Called once if loading fails. Chunks already delivered are not withdrawn. The default implementation logs the exception.
+         *
+         * @param t the exception thrown by the loader
+         */
+        default void failed(Throwable t) {
+            logger.log(Level.SEVERE, "loading in background failed", t);
+        }
+    }
+
+    /**
+     * Load items on a background thread and deliver them to the event dispatch thread in chunks, so that a view can show the first
+     * results while the rest are still loading and the event dispatch thread is never blocked.
+     *
+     * Deliveries are coalesced: there is never more than one delivery waiting on the event queue, and it takes every item loaded
+     * by the time it runs. A busy event dispatch thread therefore gets a few large chunks rather than a flood of small events.
+     *
+     * The loader runs on the background thread and returns the items to deliver. It can return a lazy Iterable (e.g., one backed
+     * by a Stream or a cursor) so that items are delivered as they are read, or a List that it has already loaded (e.g., the result
+     * of SQLUtilities.load()).
+     *
+     * @param <T> the type of item loaded
+     * @param executor the executor to load on
+     * @param loader a Callable that returns the items to deliver
+     * @param handler the handler to deliver items to on the event dispatch thread
+     * @return a Future that can be used to cancel loading; once cancelled, no more chunks are delivered and neither done() nor
+     * failed() is called
+     */
+    public static <T> Future<?> loadInBackground(ExecutorService executor, Callable<? extends Iterable<? extends T>> loader,
+            ChunkHandler<T> handler) {
+        ChunkDelivery<T> delivery = new ChunkDelivery<>(handler);
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            try {
+                for (T item : loader.call()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return null;
+                    }
+
+                    delivery.add(item);
+                }
+
+                delivery.finish(null);
+            } catch (Throwable t) {
+                delivery.finish(t);
+            }
+
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                delivery.cancelled = isCancelled();
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Load items on the shared background executor and deliver them to the event dispatch thread in chunks.
+     *
+     * @param <T> the type of item loaded
+     * @param loader a Callable that returns the items to deliver
+     * @param handler the handler to deliver items to on the event dispatch thread
+     * @return a Future that can be used to cancel loading
+     * @see #loadInBackground(ExecutorService, Callable, ChunkHandler)
+     */
+    public static <T> Future<?> loadInBackground(Callable<? extends Iterable<? extends T>> loader, ChunkHandler<T> handler) {
+        return loadInBackground(backgroundExecutor(), loader, handler);
+    }
+
+    /**
+     * Buffers items from the loading thread and hands them to the event dispatch thread with at most one pending invokeLater().
+     */
+    private static class ChunkDelivery<T> implements Runnable {
+
+        private final ChunkHandler<T> handler;
+        private List<T> buffer = new ArrayList<>();
+        private boolean scheduled;
+        private boolean finished;
+        private Throwable failure;
+        private volatile boolean cancelled;
+
+        private ChunkDelivery(ChunkHandler<T> handler) {
+            this.handler = handler;
+        }
+
+        private synchronized void add(T item) {
+            buffer.add(item);
+            schedule();
+        }
+
+        private synchronized void finish(Throwable failure) {
+            this.finished = true;
+            this.failure = failure;
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled) {
+                scheduled = true;
+                EventQueue.invokeLater(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<T> chunk;
+            boolean finished;
+            Throwable failure;
+            synchronized (this) {
+                scheduled = false;
+                chunk = buffer;
+                buffer = new ArrayList<>();
+                finished = this.finished;
+                failure = this.failure;
+            }
+
+            if (cancelled) {
+                return;
+            }
+
+            if (!chunk.isEmpty()) {
+                handler.chunk(chunk);
+            }
+
+            if (finished) {
+                if (failure == null) {
+                    handler.done();
+                } else {
+                    handler.failed(failure);
+                }
+            }
+        }
+    }
 }
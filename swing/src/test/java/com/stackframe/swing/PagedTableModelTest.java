@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.swing;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import javax.swing.event.TableModelEvent;
+import junit.framework.TestCase;
+
+/**
+ * Tests for PagedTableModel. Fetches are queued rather than run so that each test decides when pages arrive, and the model is
+ * only touched on the event dispatch thread. No display is needed.
+ *
+ * @author mcculley
+ */
+public class PagedTableModelTest extends TestCase {
+
+    private static final int PAGE_SIZE = 10;
+
+    /**
+     * The first row of each fetch, in the order they were made.
+     */
+    private final List<Integer> fetches = new ArrayList<>();
+    private final Queue<Runnable> tasks = new LinkedList<>();
+    private final Executor executor = tasks::add;
+    private final List<TableModelEvent> events = new ArrayList<>();
+    private PagedTableModel model;
+
+    private final PagedTableModel.PageSource source = (firstRow, rowCount) -> {
+        synchronized (fetches) {
+            fetches.add(firstRow);
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int row = firstRow; row < firstRow + rowCount; row++) {
+            rows.add(new Object[]{row, "row " + row});
+        }
+
+        return rows;
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        model = onEventDispatchThread(() -> {
+            PagedTableModel m = new PagedTableModel(source, new String[]{"id", "name"}, 100, PAGE_SIZE, 3, executor);
+            m.addTableModelListener(events::add);
+            return m;
+        });
+    }
+
+    private static <T> T onEventDispatchThread(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        EventQueue.invokeAndWait(task);
+        return task.get();
+    }
+
+    private Object valueAt(int row, int column) throws Exception {
+        return onEventDispatchThread(() -> model.getValueAt(row, column));
+    }
+
+    private boolean isLoaded(int row) throws Exception {
+        return onEventDispatchThread(() -> model.isLoaded(row));
+    }
+
+    /**
+     * Run the queued fetches and wait for the pages they post to the event dispatch thread to arrive.
+     */
+    private void fetchPages() throws Exception {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+
+        EventQueue.invokeAndWait(() -> {
+        });
+    }
+
+    public void testPageAndTheNextAreFetchedOnDemand() throws Exception {
+        assertNull(valueAt(5, 0));
+        assertEquals(2, tasks.size());
+        assertNull(valueAt(6, 1));
+        assertEquals("a page is only requested once", 2, tasks.size());
+
+        fetchPages();
+        assertEquals(Arrays.asList(0, 10), fetches);
+        assertEquals(5, valueAt(5, 0));
+        assertEquals("row 19", valueAt(19, 1));
+        assertFalse(isLoaded(20));
+        assertTrue(tasks.isEmpty());
+
+        assertEquals(2, events.size());
+        assertEquals(0, events.get(0).getFirstRow());
+        assertEquals(9, events.get(0).getLastRow());
+    }
+
+    public void testStalePagesAreDroppedAfterRefresh() throws Exception {
+        valueAt(0, 0);
+        onEventDispatchThread(() -> {
+            model.refresh(50);
+            return null;
+        });
+
+        // The fetches requested before the refresh complete afterwards and must be ignored.
+        events.clear();
+        fetchPages();
+        assertFalse(isLoaded(0));
+        assertFalse(isLoaded(10));
+        assertTrue(events.isEmpty());
+        assertEquals(50, model.getRowCount());
+
+        // The pages are fetched again on demand.
+        assertNull(valueAt(0, 0));
+        fetchPages();
+        assertEquals(0, valueAt(0, 0));
+        assertEquals(Arrays.asList(0, 10, 0, 10), fetches);
+    }
+
+    public void testLeastRecentlyUsedPagesAreEvicted() throws Exception {
+        valueAt(0, 0);
+        fetchPages();
+        assertTrue(isLoaded(0));
+        assertTrue(isLoaded(10));
+
+        // Reading page 0 again makes page 1 the least recently used, so it is evicted first.
+        assertEquals(0, valueAt(0, 0));
+        valueAt(50, 0);
+        fetchPages();
+        assertTrue(isLoaded(0));
+        assertFalse(isLoaded(10));
+        assertTrue(isLoaded(50));
+        assertTrue(isLoaded(60));
+
+        fetches.clear();
+        assertNull(valueAt(10, 0));
+        fetchPages();
+        assertEquals(Arrays.asList(10, 20), fetches);
+        assertEquals(10, valueAt(10, 0));
+    }
+
+    public void testLastPageIsShort() throws Exception {
+        onEventDispatchThread(() -> {
+            model.refresh(25);
+            return null;
+        });
+        valueAt(20, 0);
+        assertEquals("there is no page after the last", 1, tasks.size());
+        fetchPages();
+        assertEquals(24, valueAt(24, 0));
+        assertEquals(Arrays.asList(20), fetches);
+    }
+
+    public void testFailedPageIsNotFetchedAgainUntilRefresh() throws Exception {
+        final List<Integer> failed = new ArrayList<>();
+        model = onEventDispatchThread(() -> new PagedTableModel((firstRow, rowCount) -> {
+            throw new Exception("unavailable");
+        }, new String[]{"id"}, 5, PAGE_SIZE, 2, executor) {
+            @Override
+            protected void pageFailed(int page, Exception e) {
+                failed.add(page);
+            }
+        });
+
+        valueAt(0, 0);
+        fetchPages();
+        assertEquals(Arrays.asList(0), failed);
+        assertNull(valueAt(0, 0));
+        assertTrue(tasks.isEmpty());
+
+        onEventDispatchThread(() -> {
+            model.refresh(5);
+            return null;
+        });
+        valueAt(0, 0);
+        assertEquals(1, tasks.size());
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.swing;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+
+/**
+ * Tests for SwingUtilities.loadInBackground(). The event dispatch thread is held with a latch so that deliveries pile up, and
+ * drained with invokeAndWait() before the results are checked. No display is needed.
+ *
+ * @author Gene McCulley
+ */
+public class SwingUtilitiesTest extends TestCase {
+
+    private ExecutorService executor;
+    private final CountDownLatch edtReleased = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        edtReleased.countDown();
+        executor.shutdownNow();
+        drain();
+    }
+
+    /**
+     * Wait until every event already on the event queue has been dispatched.
+     */
+    private static void drain() throws Exception {
+        EventQueue.invokeAndWait(() -> {
+        });
+    }
+
+    /**
+     * Hold the event dispatch thread until edtReleased is counted down.
+     */
+    private void holdEventDispatchThread() throws InterruptedException {
+        final CountDownLatch held = new CountDownLatch(1);
+        EventQueue.invokeLater(() -> {
+            held.countDown();
+            try {
+                edtReleased.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        held.await();
+    }
+
+    private static class RecordingHandler implements SwingUtilities.ChunkHandler<Integer> {
+
+        final List<List<Integer>> chunks = new ArrayList<>();
+        int done;
+        final List<Throwable> failures = new ArrayList<>();
+
+        @Override
+        public void chunk(List<Integer> items) {
+            assertTrue(EventQueue.isDispatchThread());
+            chunks.add(new ArrayList<>(items));
+        }
+
+        @Override
+        public void done() {
+            done++;
+        }
+
+        @Override
+        public void failed(Throwable t) {
+            failures.add(t);
+        }
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+
+        return items;
+    }
+
+    public void testDeliveriesWhileBusyAreCoalesced() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        holdEventDispatchThread();
+        Future<?> future = SwingUtilities.loadInBackground(executor, () -> range(1000), handler);
+        future.get(10, TimeUnit.SECONDS);
+
+        // Everything was loaded while the event dispatch thread was busy, so a single delivery takes it all.
+        edtReleased.countDown();
+        drain();
+        assertEquals(1, handler.chunks.size());
+        assertEquals(range(1000), handler.chunks.get(0));
+        assertEquals(1, handler.done);
+        assertTrue(handler.failures.isEmpty());
+    }
+
+    public void testItemsArriveInOrderAcrossChunks() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        SwingUtilities.loadInBackground(executor, () -> range(10000), handler).get(10, TimeUnit.SECONDS);
+        drain();
+
+        List<Integer> all = new ArrayList<>();
+        for (List<Integer> chunk : handler.chunks) {
+            assertFalse(chunk.isEmpty());
+            all.addAll(chunk);
+        }
+
+        assertEquals(range(10000), all);
+        assertEquals(1, handler.done);
+    }
+
+    public void testNoCallbacksAfterCancel() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        final CountDownLatch firstLoaded = new CountDownLatch(1);
+        final CountDownLatch never = new CountDownLatch(1);
+        holdEventDispatchThread();
+        Future<?> future = SwingUtilities.loadInBackground(executor, () -> () -> new Iterator<Integer>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == 1) {
+                    firstLoaded.countDown();
+                    try {
+                        never.await();
+                    } catch (InterruptedException ie) {
+                        throw new RuntimeException(ie);
+                    }
+                }
+
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return next++;
+            }
+        }, handler);
+
+        // A delivery of the first item is waiting on the event queue when the load is cancelled.
+        firstLoaded.await();
+        assertTrue(future.cancel(true));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        edtReleased.countDown();
+        drain();
+        assertTrue(handler.chunks.isEmpty());
+        assertEquals(0, handler.done);
+        assertTrue(handler.failures.isEmpty());
+    }
+
+    public void testFailureIsDeliveredAfterChunks() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        final IllegalStateException failure = new IllegalStateException("boom");
+        holdEventDispatchThread();
+        SwingUtilities.loadInBackground(executor, () -> () -> new Iterator<Integer>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == 3) {
+                    throw failure;
+                }
+
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return next++;
+            }
+        }, handler).get(10, TimeUnit.SECONDS);
+
+        edtReleased.countDown();
+        drain();
+        assertEquals(1, handler.chunks.size());
+        assertEquals(range(3), handler.chunks.get(0));
+        assertEquals(0, handler.done);
+        assertEquals(1, handler.failures.size());
+        assertSame(failure, handler.failures.get(0));
+    }
+
+    public void testDefaultFailureIsLogged() throws Exception {
+        final List<LogRecord> records = new ArrayList<>();
+        Handler capture = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(SwingUtilities.class.getName());
+        logger.addHandler(capture);
+        logger.setUseParentHandlers(false);
+        try {
+            final Exception failure = new Exception("boom");
+            SwingUtilities.loadInBackground(executor, () -> {
+                throw failure;
+            }, items -> fail("no items were loaded")).get(10, TimeUnit.SECONDS);
+            drain();
+
+            assertEquals(1, records.size());
+            assertSame(failure, records.get(0).getThrown());
+        } finally {
+            logger.removeHandler(capture);
+            logger.setUseParentHandlers(true);
+        }
+    }
+}
@@ -11,27 +11,222 @@
 package com.stackframe.util;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * A factory that makes maps with a fixed set of keys. A collection of such maps uses less memory than a collection of HashMap
  * objects which explicitly define the keys.
  *
+ * The keys are indexed with a perfect hash table built when the FixedMapMaker is created, so looking up a key is a hash
+ * computation and a couple of array reads with no boxing. Keys that are the same instance as the ones the FixedMapMaker was created
+ * with (e.g., interned Strings) are matched by identity before equals() is called. Maps iterate in the order the keys were
+ * declared.
+ *
+ * A key may be declared more than once, as happens with the column names of a join. The last declaration wins: looking up the key
+ * finds its last position, and maps made by this FixedMapMaker hold the key once. The earlier positions can still be read and
+ * written by position, so a loader can fill every column of a row without checking for duplicates.
+ *
  * @author Gene McCulley
  */
 public class FixedMapMaker<K> {
 
-    private final Map<K, Integer> keys;
+    /**
+     * The largest table, as a multiple of the number of keys, to try when searching for a perfect hash.
+     */
+    private static final int MAX_TABLE_FACTOR = 8;
+
+    /**
+     * The number of multipliers to try at each table size when searching for a perfect hash.
+     */
+    private static final int MAX_SEEDS = 64;
+
+    private final Object[] keys;
+    private final int[] hashes;
+    private final int[] distinct;
+    private final Object[] slotKeys;
+    private final int[] slotIndices;
+    private final int mask;
+    private final int seed;
+    private final boolean perfect;
 
     /**
      * Create a FixedMapMaker for a defined set of keys.
      *
-     * @param keys the keys to use
+     * @param keys the keys to use; if a key appears more than once, its last appearance is the one found by lookups
      */
     public FixedMapMaker(K[] keys) {
         int numKeys = keys.length;
-        this.keys = new HashMap<>(numKeys);
-        for (int i = 0; i < numKeys; i++)
-            this.keys.put(keys[i], i);
+        this.keys = Arrays.copyOf(keys, numKeys, Object[].class);
+        this.hashes = new int[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            hashes[i] = hash(this.keys[i]);
+        }
+
+        this.distinct = distinct(this.keys);
+        int[] distinctHashes = new int[distinct.length];
+        for (int i = 0; i < distinct.length; i++) {
+            distinctHashes[i] = hashes[distinct[i]];
+        }
+
+        int minimumSize = tableSizeFor(distinct.length);
+        for (int size = minimumSize; size <= minimumSize * MAX_TABLE_FACTOR; size <<= 1) {
+            int found = findSeed(distinctHashes, size);
+            if (found != 0) {
+                this.mask = size - 1;
+                this.seed = found;
+                this.perfect = true;
+                this.slotKeys = new Object[size];
+                this.slotIndices = new int[size];
+                fill();
+                return;
+            }
+        }
+
+        // Some keys share a hash code, so no perfect hash exists. Fall back to linear probing in a sparse table.
+        int size = tableSizeFor(distinct.length * 2);
+        this.mask = size - 1;
+        this.seed = seedAt(0);
+        this.perfect = false;
+        this.slotKeys = new Object[size];
+        this.slotIndices = new int[size];
+        fill();
+    }
+
+    /**
+     * @return the positions of the keys that lookups find, in declared order: every position except those of keys that are
+     * declared again later
+     */
+    private static int[] distinct(Object[] keys) {
+        Map<Object, Integer> last = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            last.put(keys[i], i);
+        }
+
+        int[] distinct = new int[last.size()];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (last.get(keys[i]) == i) {
+                distinct[n++] = i;
+            }
+        }
+
+        return distinct;
+    }
+
+    private static int hash(Object key) {
+        return key == null ? 0 : key.hashCode();
+    }
+
+    private static int tableSizeFor(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * @return an odd multiplier derived from the golden ratio, which spreads hash codes well
+     */
+    private static int seedAt(int attempt) {
+        return (0x9E3779B9 + attempt * 0x632BE5AB) | 1;
+    }
+
+    private static int slot(int hash, int seed, int mask) {
+        int h = hash * seed;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int findSeed(int[] hashes, int size) {
+        int mask = size - 1;
+        BitSet used = new BitSet(size);
+        for (int attempt = 0; attempt < MAX_SEEDS; attempt++) {
+            int seed = seedAt(attempt);
+            used.clear();
+            boolean collision = false;
+            for (int hash : hashes) {
+                int slot = slot(hash, seed, mask);
+                if (used.get(slot)) {
+                    collision = true;
+                    break;
+                }
+
+                used.set(slot);
+            }
+
+            if (!collision) {
+                return seed;
+            }
+        }
+
+        return 0;
+    }
+
+    private void fill() {
+        Arrays.fill(slotIndices, -1);
+        for (int i : distinct) {
+            Object key = keys[i];
+            int slot = slot(hashes[i], seed, mask);
+            while (slotIndices[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            slotKeys[slot] = key;
+            slotIndices[slot] = i;
+        }
+    }
+
+    /**
+     * Find the position of a key.
+     *
+     * @param key the key to look up
+     * @return the position of key in the keys this FixedMapMaker was created with, or -1 if it is not one of them
+     */
+    public int indexOf(Object key) {
+        for (int slot = slot(hash(key), seed, mask);; slot = (slot + 1) & mask) {
+            int index = slotIndices[slot];
+            if (index < 0) {
+                return -1;
+            }
+
+            Object k = slotKeys[slot];
+            if (k == key || (k != null && k.equals(key))) {
+                return index;
+            }
+
+            if (perfect) {
+                // Each key has a slot to itself, so there is nothing to probe for.
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the number of keys, counting a key declared more than once at each of its positions
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return the number of distinct keys, which is the size of the maps made by this FixedMapMaker
+     */
+    public int distinctSize() {
+        return distinct.length;
+    }
+
+    /**
+     * @param index the position of a key, in the order the keys were declared
+     * @return true if the key at index is declared again later, so that looking it up finds the later position
+     */
+    public boolean isShadowed(int index) {
+        return indexOf(keys[index]) != index;
+    }
+
+    /**
+     * Get a key by position.
+     *
+     * @param index the position of the key, in the order the keys were declared
+     * @return the key
+     */
+    public K getKey(int index) {
+        return (K) keys[index];
     }
 
     /**
@@ -39,90 +234,371 @@ public class FixedMapMaker<K> {
      *
      * @return a new Map that uses the keys defined in this FixedMapMaker
      */
-    public <V> Map<K, V> make() {
-        return new AbstractMap<K, V>() {
+    public <V> FixedMap<K, V> make() {
+        return new FixedMap<>(this);
+    }
 
-            private final Object[] values = new Object[keys.size()];
+    /**
+     * The operations shared by FixedMap and FrozenMap. Every key of the FixedMapMaker is always present, with a value of null until
+     * one is put, and removing a key sets its value back to null. Lookups go directly to a position in an array, and values can
+     * also be read by the position of their key.
+     *
+     * Iterating the entry set does not allocate an Entry per element: each iterator returns one shared Entry that moves along the
+     * map, so an Entry is only valid until the next call to next() on the iterator that returned it. Copy an Entry, e.g. with
+     * new AbstractMap.SimpleImmutableEntry&lt;&gt;(entry), to keep it. toArray() on the entry set returns entries that stay valid.
+     */
+    public abstract static class AbstractFixedMap<K, V> extends AbstractMap<K, V> {
 
-            @Override
-            public V put(K k, V v) {
-                Integer index = keys.get(k);
-                if (index == null) {
-                    throw new IllegalArgumentException(k + " is not a valid key");
+        final FixedMapMaker<K> maker;
+        final Object[] values;
+
+        AbstractFixedMap(FixedMapMaker<K> maker, Object[] values) {
+            this.maker = maker;
+            this.values = values;
+        }
+
+        /**
+         * @return the FixedMapMaker that made this map
+         */
+        public FixedMapMaker<K> getMaker() {
+            return maker;
+        }
+
+        /**
+         * Get a value by the position of its key. Note that for a map with Integer keys, get(int) is chosen over get(Object) when
+         * called with an int, so box the key to look up by key.
+         *
+         * @param index the position of the key, in the order the keys were declared
+         * @return the value
+         */
+        public V get(int index) {
+            return (V) values[index];
+        }
+
+        /**
+         * Set a value by the position of its key.
+         *
+         * @param index the position of the key, in the order the keys were declared
+         * @param v the new value
+         * @return the previous value
+         */
+        public abstract V set(int index, V v);
+
+        @Override
+        public V put(K k, V v) {
+            int index = maker.indexOf(k);
+            if (index < 0) {
+                throw new IllegalArgumentException(k + " is not a valid key");
+            }
+
+            return set(index, v);
+        }
+
+        @Override
+        public V get(Object k) {
+            int index = maker.indexOf(k);
+            return index < 0 ? null : (V) values[index];
+        }
+
+        @Override
+        public boolean containsKey(Object k) {
+            return maker.indexOf(k) >= 0;
+        }
+
+        @Override
+        public boolean containsValue(Object v) {
+            for (int i : maker.distinct) {
+                if (Objects.equals(values[i], v)) {
+                    return true;
                 }
+            }
+
+            return false;
+        }
+
+        @Override
+        public V remove(Object k) {
+            int index = maker.indexOf(k);
+            return index < 0 ? null : set(index, null);
+        }
+
+        @Override
+        public int size() {
+            return maker.distinct.length;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return maker.distinct.length == 0;
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < values.length; i++) {
+                set(i, null);
+            }
+        }
 
-                V old = (V) values[index];
-                values[index] = v;
-                return old;
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            Object[] keys = maker.keys;
+            for (int i : maker.distinct) {
+                action.accept((K) keys[i], (V) values[i]);
             }
+        }
 
-            private Map.Entry<K, V> makeEntry(final K key, final int index) {
-                return new Map.Entry<K, V>() {
+        @Override
+        public int hashCode() {
+            int[] hashes = maker.hashes;
+            int h = 0;
+            for (int i : maker.distinct) {
+                h += hashes[i] ^ Objects.hashCode(values[i]);
+            }
 
-                    @Override
-                    public K getKey() {
-                        return key;
-                    }
+            return h;
+        }
 
-                    @Override
-                    public V getValue() {
-                        return (V) values[index];
-                    }
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
 
-                    @Override
-                    public V setValue(V v) {
-                        V old = (V) values[index];
-                        values[index] = v;
-                        return old;
+            if (o instanceof AbstractFixedMap && ((AbstractFixedMap) o).maker == maker) {
+                Object[] otherValues = ((AbstractFixedMap) o).values;
+                for (int i : maker.distinct) {
+                    if (!Objects.equals(values[i], otherValues[i])) {
+                        return false;
                     }
-                };
+                }
+
+                return true;
+            }
+
+            return super.equals(o);
+        }
+
+        /**
+         * A view of the value at one position. The iterators of the entry set move a single Entry along the map rather than
+         * making one per element.
+         */
+        private final class View implements Entry<K, V> {
+
+            private int index;
+
+            private View(int index) {
+                this.index = index;
             }
 
             @Override
-            public Set<Entry<K, V>> entrySet() {
-                return new AbstractSet<Entry<K, V>>() {
+            public K getKey() {
+                return maker.getKey(index);
+            }
 
-                    @Override
-                    public Iterator<Entry<K, V>> iterator() {
-                        return new Iterator<Entry<K, V>>() {
+            @Override
+            public V getValue() {
+                return (V) values[index];
+            }
 
-                            private final Iterator<Entry<K, Integer>> i = keys.entrySet().iterator();
+            @Override
+            public V setValue(V v) {
+                return set(index, v);
+            }
 
-                            /**
-                             * Key of element returned by most recent call to next().  Reset to null if this element is deleted by
-                             * a call to remove().
-                             */
-                            private Entry<K, Integer> lastRet = null;
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
 
-                            @Override
-                            public boolean hasNext() {
-                                return i.hasNext();
-                            }
+                Entry<?, ?> e = (Entry<?, ?>) o;
+                return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+            }
+
+            @Override
+            public String toString() {
+                return getKey() + "=" + getValue();
+            }
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<Entry<K, V>>() {
+
+                        private final int[] distinct = maker.distinct;
+                        private final View entry = new View(-1);
+                        private int next;
 
-                            @Override
-                            public Entry<K, V> next() {
-                                lastRet = i.next();
-                                return makeEntry(lastRet.getKey(), lastRet.getValue());
+                        /**
+                         * Index of element returned by most recent call to next().  Reset to -1 if this element is deleted by a
+                         * call to remove().
+                         */
+                        private int lastRet = -1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < distinct.length;
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            if (next >= distinct.length) {
+                                throw new NoSuchElementException();
                             }
 
-                            @Override
-                            public void remove() {
-                                if (lastRet == null) {
-                                    throw new IllegalStateException();
-                                }
+                            lastRet = distinct[next++];
+                            entry.index = lastRet;
+                            return entry;
+                        }
 
-                                values[lastRet.getValue()] = null;
-                                lastRet = null;
+                        @Override
+                        public void remove() {
+                            if (lastRet < 0) {
+                                throw new IllegalStateException();
                             }
-                        };
-                    }
 
-                    @Override
-                    public int size() {
-                        return keys.size();
+                            set(lastRet, null);
+                            lastRet = -1;
+                        }
+                    };
+                }
+
+                /**
+                 * Copying entries out of the set keeps them, so give each its own Entry.
+                 */
+                private List<Entry<K, V>> copies() {
+                    int[] distinct = maker.distinct;
+                    List<Entry<K, V>> copies = new ArrayList<>(distinct.length);
+                    for (int i : distinct) {
+                        copies.add(new View(i));
                     }
-                };
+
+                    return copies;
+                }
+
+                @Override
+                public Object[] toArray() {
+                    return copies().toArray();
+                }
+
+                @Override
+                public <T> T[] toArray(T[] a) {
+                    return copies().toArray(a);
+                }
+
+                @Override
+                public int size() {
+                    return maker.distinct.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * A mutable map made by a FixedMapMaker. Values can also be written by the position of their key.
+     *
+     * Like HashMap, a FixedMap is not safe for use by multiple threads without external synchronization. Once it is filled in, it
+     * can be frozen into a FrozenMap that can be shared.
+     */
+    public static final class FixedMap<K, V> extends AbstractFixedMap<K, V> {
+
+        private FrozenMap<K, V> frozen;
+
+        private FixedMap(FixedMapMaker<K> maker) {
+            super(maker, new Object[maker.keys.length]);
+        }
+
+        private void checkNotFrozen() {
+            if (frozen != null) {
+                throw new IllegalStateException("map has been frozen");
+            }
+        }
+
+        @Override
+        public V set(int index, V v) {
+            checkNotFrozen();
+            V old = (V) values[index];
+            values[index] = v;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            checkNotFrozen();
+            Arrays.fill(values, null);
+        }
+
+        /**
+         * Make an immutable snapshot of this map without copying it. The snapshot shares this map's values, so this map can no
+         * longer be changed; any attempt to do so throws IllegalStateException. Calling freeze() again returns the same snapshot.
+         *
+         * @return an immutable map with the same contents as this one
+         */
+        public FrozenMap<K, V> freeze() {
+            if (frozen == null) {
+                frozen = new FrozenMap<>(maker, values);
             }
-        };
+
+            return frozen;
+        }
+
+        /**
+         * @return true if freeze() has been called on this map
+         */
+        public boolean isFrozen() {
+            return frozen != null;
+        }
+    }
+
+    /**
+     * An immutable map made by freezing a FixedMap. A FrozenMap is safe to share between threads without synchronization, even if
+     * it is published through a data race, as its state is reached only through final fields and reading or iterating it never
+     * writes to it. Its hash code is computed once, so it is cheap to use as a key or to put in a cache, and two FrozenMaps from
+     * the same FixedMapMaker are compared by hash code before their values are compared.
+     */
+    public static final class FrozenMap<K, V> extends AbstractFixedMap<K, V> {
+
+        private final int hashCode;
+
+        private FrozenMap(FixedMapMaker<K> maker, Object[] values) {
+            super(maker, values);
+            this.hashCode = super.hashCode();
+        }
+
+        /**
+         * @throws UnsupportedOperationException always
+         */
+        @Override
+        public V set(int index, V v) {
+            throw new UnsupportedOperationException("map is frozen");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("map is frozen");
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof FrozenMap && ((FrozenMap) o).maker == maker && ((FrozenMap) o).hashCode != hashCode) {
+                return false;
+            }
+
+            return super.equals(o);
+        }
     }
 }
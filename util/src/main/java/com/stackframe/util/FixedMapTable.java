@@ -0,0 +1,911 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.*;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * A table of rows that all have the keys of a FixedMapMaker, stored by column. Each column is a single array shared by all rows,
+ * and columns declared as long, int, double or boolean are stored as arrays of that primitive type. This uses a fraction of the
+ * memory of a List of maps for large amounts of data, as there is no per-row object or per-value box.
+ *
+ * The table is a List of rows and each row is a lightweight Map view onto the columns, so a FixedMapTable can be used where a List
+ * of Map objects is expected. Rows are appended with add() or appendRow() and cannot be removed.
+ *
+ * Like ArrayList, a FixedMapTable is not safe for use by multiple threads without external synchronization.
+ *
+ * @author Gene McCulley
+ */
+public class FixedMapTable<K> extends AbstractList<Map<K, Object>> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final FixedMapMaker<K> maker;
+    private final Column[] columns;
+    private final Index[] indexes;
+    private int size;
+    private int capacity;
+
+    /**
+     * Create a FixedMapTable.
+     *
+     * @param maker the FixedMapMaker that defines the columns
+     * @param types the type of each column, in the order of the keys of maker. Columns of type long, int, double or boolean (or
+     * their wrapper types) are stored as primitives and any other type is stored as Object. Columns beyond the end of types are
+     * stored as Object.
+     */
+    public FixedMapTable(FixedMapMaker<K> maker, Class<?>... types) {
+        this.maker = maker;
+        int numColumns = maker.size();
+        this.columns = new Column[numColumns];
+        this.indexes = (Index[]) new FixedMapTable.Index[numColumns];
+        this.capacity = DEFAULT_CAPACITY;
+        for (int i = 0; i < numColumns; i++) {
+            columns[i] = Column.of(i < types.length ? types[i] : Object.class, capacity);
+        }
+    }
+
+    /**
+     * @return the FixedMapMaker that defines the columns
+     */
+    public FixedMapMaker<K> getMaker() {
+        return maker;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Find the position of a column.
+     *
+     * @param key the key of the column
+     * @return the position of the column
+     * @throws IllegalArgumentException if key is not a column of this table
+     */
+    public int columnIndex(Object key) {
+        int index = maker.indexOf(key);
+        if (index < 0) {
+            throw new IllegalArgumentException(key + " is not a valid key");
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a view of a row. The view reads and writes through to the table.
+     *
+     * @param row the position of the row
+     * @return a Map view of the row
+     */
+    @Override
+    public Row get(int row) {
+        checkRow(row);
+        return new Row(row);
+    }
+
+    /**
+     * Append a row with all values null.
+     *
+     * @return the position of the new row
+     */
+    public int appendRow() {
+        if (size == capacity) {
+            if (capacity == Integer.MAX_VALUE) {
+                throw new IllegalStateException("table is full");
+            }
+
+            // Grow by half, clamping where that would overflow an int.
+            int newCapacity = capacity + (capacity >> 1) + 1;
+            ensureCapacity(newCapacity < 0 ? Integer.MAX_VALUE : newCapacity);
+        }
+
+        int row = size++;
+        for (int c = 0; c < columns.length; c++) {
+            if (indexes[c] != null) {
+                indexes[c].add(null, row);
+            }
+        }
+
+        modCount++;
+        return row;
+    }
+
+    /**
+     * Append a row.
+     *
+     * @param values the values of the row, in column order
+     * @return the position of the new row
+     * @throws ClassCastException if a value is not of a type its column holds, in which case no row is appended
+     */
+    public int append(Object... values) {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException(String.format("expected %d values but got %d", columns.length, values.length));
+        }
+
+        // Check every value before the row is appended so that a value of the wrong type leaves the table and its indexes as
+        // they were rather than holding a half-filled row.
+        for (int c = 0; c < values.length; c++) {
+            columns[c].check(values[c]);
+        }
+
+        int row = appendRow();
+        for (int c = 0; c < values.length; c++) {
+            if (values[c] != null) {
+                setValue(row, c, values[c]);
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * Append a row copied from a Map. Keys of the map that are not columns of this table are ignored.
+     *
+     * @param map the row to copy
+     * @return true
+     * @throws ClassCastException if a value is not of a type its column holds, in which case no row is appended
+     */
+    @Override
+    public boolean add(Map<K, Object> map) {
+        Object[] values = new Object[columns.length];
+        if (map instanceof FixedMapMaker.AbstractFixedMap && ((FixedMapMaker.AbstractFixedMap) map).getMaker() == maker) {
+            FixedMapMaker.AbstractFixedMap<K, Object> fixed = (FixedMapMaker.AbstractFixedMap<K, Object>) map;
+            for (int c = 0; c < columns.length; c++) {
+                values[c] = fixed.get(c);
+            }
+        } else {
+            for (Map.Entry<K, Object> entry : map.entrySet()) {
+                int c = maker.indexOf(entry.getKey());
+                if (c >= 0) {
+                    values[c] = entry.getValue();
+                }
+            }
+        }
+
+        append(values);
+        return true;
+    }
+
+    /**
+     * Make sure the columns can hold a number of rows without growing.
+     *
+     * @param minimumCapacity the number of rows
+     */
+    public void ensureCapacity(int minimumCapacity) {
+        if (minimumCapacity > capacity) {
+            for (Column column : columns) {
+                column.resize(minimumCapacity);
+            }
+
+            capacity = minimumCapacity;
+        }
+    }
+
+    /**
+     * Shrink the columns to the number of rows in the table.
+     */
+    public void trimToSize() {
+        if (size < capacity) {
+            for (Column column : columns) {
+                column.resize(size);
+            }
+
+            capacity = size;
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        }
+    }
+
+    /**
+     * Get a value. Values of primitive columns are boxed.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @return the value, which may be null
+     */
+    public Object getValue(int row, int column) {
+        checkRow(row);
+        return columns[column].get(row);
+    }
+
+    /**
+     * Set a value.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @param value the new value, which may be null
+     * @return the previous value
+     * @throws ClassCastException if the column is primitive and value is not of a compatible type
+     */
+    public Object setValue(int row, int column, Object value) {
+        checkRow(row);
+        Column c = columns[column];
+        Object old = c.get(row);
+        c.set(row, value);
+        if (indexes[column] != null) {
+            indexes[column].move(old, c.get(row), row);
+        }
+
+        return old;
+    }
+
+    /**
+     * @param row the position of the row
+     * @param column the position of the column
+     * @return true if the value is null
+     */
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * Get a value as a long without boxing if the column is a long or int column. Null values are returned as 0.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @return the value
+     * @throws ClassCastException if the column is an Object column that does not hold a Number
+     */
+    public long getLong(int row, int column) {
+        checkRow(row);
+        return columns[column].getLong(row);
+    }
+
+    /**
+     * Get a value as an int without boxing if the column is an int column. Null values are returned as 0.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @return the value
+     * @throws ClassCastException if the column is an Object column that does not hold a Number
+     */
+    public int getInt(int row, int column) {
+        return (int) getLong(row, column);
+    }
+
+    /**
+     * Get a value as a double without boxing if the column is a double, long or int column. Null values are returned as 0.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @return the value
+     * @throws ClassCastException if the column is an Object column that does not hold a Number
+     */
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        return columns[column].getDouble(row);
+    }
+
+    /**
+     * Get a value as a boolean without boxing if the column is a boolean column. Null values are returned as false.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @return the value
+     * @throws ClassCastException if the column is an Object column that does not hold a Boolean
+     */
+    public boolean getBoolean(int row, int column) {
+        checkRow(row);
+        Object value = columns[column].get(row);
+        return value != null && (Boolean) value;
+    }
+
+    /**
+     * Set a value in a long column without boxing.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @param value the new value
+     */
+    public void setLong(int row, int column, long value) {
+        checkRow(row);
+        Column c = columns[column];
+        if (c instanceof LongColumn && indexes[column] == null) {
+            ((LongColumn) c).setLong(row, value);
+        } else {
+            setValue(row, column, value);
+        }
+    }
+
+    /**
+     * Set a value in an int column without boxing.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @param value the new value
+     */
+    public void setInt(int row, int column, int value) {
+        checkRow(row);
+        Column c = columns[column];
+        if (c instanceof IntColumn && indexes[column] == null) {
+            ((IntColumn) c).setInt(row, value);
+        } else {
+            setValue(row, column, value);
+        }
+    }
+
+    /**
+     * Set a value in a double column without boxing.
+     *
+     * @param row the position of the row
+     * @param column the position of the column
+     * @param value the new value
+     */
+    public void setDouble(int row, int column, double value) {
+        checkRow(row);
+        Column c = columns[column];
+        if (c instanceof DoubleColumn && indexes[column] == null) {
+            ((DoubleColumn) c).setDouble(row, value);
+        } else {
+            setValue(row, column, value);
+        }
+    }
+
+    /**
+     * Scan a column as longs. Null values are returned as 0.
+     *
+     * @param column the position of the column
+     * @return a LongStream of the values in row order
+     */
+    public LongStream longs(final int column) {
+        final Column c = columns[column];
+        return IntStream.range(0, size).mapToLong(row -> c.getLong(row));
+    }
+
+    /**
+     * Scan a column as ints. Null values are returned as 0.
+     *
+     * @param column the position of the column
+     * @return an IntStream of the values in row order
+     */
+    public IntStream ints(final int column) {
+        final Column c = columns[column];
+        return IntStream.range(0, size).map(row -> (int) c.getLong(row));
+    }
+
+    /**
+     * Scan a column as doubles. Null values are returned as 0.
+     *
+     * @param column the position of the column
+     * @return a DoubleStream of the values in row order
+     */
+    public DoubleStream doubles(final int column) {
+        final Column c = columns[column];
+        return IntStream.range(0, size).mapToDouble(row -> c.getDouble(row));
+    }
+
+    /**
+     * Scan a column. Values of primitive columns are boxed.
+     *
+     * @param column the position of the column
+     * @return a Stream of the values in row order
+     */
+    public Stream<Object> values(final int column) {
+        final Column c = columns[column];
+        return IntStream.range(0, size).mapToObj(row -> c.get(row));
+    }
+
+    /**
+     * Get a hash index on a column, building it if it does not exist. The index is kept up to date as rows are appended and values
+     * are changed.
+     *
+     * @param column the position of the column
+     * @return the Index
+     */
+    public Index index(int column) {
+        Index index = indexes[column];
+        if (index == null) {
+            index = new Index();
+            Column c = columns[column];
+            for (int row = 0; row < size; row++) {
+                index.add(c.get(row), row);
+            }
+
+            indexes[column] = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Get a hash index on a column, building it if it does not exist.
+     *
+     * @param key the key of the column
+     * @return the Index
+     */
+    public Index index(K key) {
+        return index(columnIndex(key));
+    }
+
+    /**
+     * A hash index from the values of a column to the rows that hold them.
+     */
+    public class Index {
+
+        private static final int INITIAL_ROWS = 2;
+
+        private final Map<Object, int[]> rows = new HashMap<>();
+
+        private void add(Object value, int row) {
+            int[] r = rows.get(value);
+            if (r == null) {
+                r = new int[INITIAL_ROWS + 1];
+            } else if (r[0] + 1 == r.length) {
+                r = Arrays.copyOf(r, r.length > Integer.MAX_VALUE >> 1 ? Integer.MAX_VALUE : r.length * 2);
+            }
+
+            // The first element of each array is the number of rows in it. Rows are kept in ascending order. Appended rows land at
+            // the end, but a row whose value changes may belong anywhere.
+            int count = r[0];
+            int i = count == 0 || r[count] < row ? count + 1 : -Arrays.binarySearch(r, 1, count + 1, row) - 1;
+            System.arraycopy(r, i, r, i + 1, count + 1 - i);
+            r[i] = row;
+            r[0] = count + 1;
+            rows.put(value, r);
+        }
+
+        private void move(Object oldValue, Object newValue, int row) {
+            if (Objects.equals(oldValue, newValue)) {
+                return;
+            }
+
+            int[] r = rows.get(oldValue);
+            int count = r[0];
+            int i = Arrays.binarySearch(r, 1, count + 1, row);
+            System.arraycopy(r, i + 1, r, i, count - i);
+            r[0]--;
+
+            if (r[0] == 0) {
+                rows.remove(oldValue);
+            }
+
+            add(newValue, row);
+        }
+
+        /**
+         * Find the rows with a value.
+         *
+         * @param value the value to look for; values of primitive columns are looked up by their boxed type
+         * @return the positions of the rows that hold value, in ascending order
+         */
+        public int[] rows(Object value) {
+            int[] r = rows.get(value);
+            return r == null ? new int[0] : Arrays.copyOfRange(r, 1, r[0] + 1);
+        }
+
+        /**
+         * Find the rows with a value.
+         *
+         * @param value the value to look for; values of primitive columns are looked up by their boxed type
+         * @return views of the rows that hold value, in row order
+         */
+        public List<Row> get(Object value) {
+            final int[] r = rows.get(value);
+            if (r == null) {
+                return Collections.emptyList();
+            }
+
+            final int count = r[0];
+            List<Row> found = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                found.add(new Row(r[i]));
+            }
+
+            return found;
+        }
+
+        /**
+         * @return the distinct values in the column
+         */
+        public Set<Object> values() {
+            return Collections.unmodifiableSet(rows.keySet());
+        }
+    }
+
+    /**
+     * A view of one row of a FixedMapTable. Every key of the FixedMapMaker is always present, and removing a key sets its value to
+     * null.
+     */
+    public final class Row extends AbstractMap<K, Object> {
+
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        /**
+         * @return the position of this row in the table
+         */
+        public int getRowIndex() {
+            return row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int c = maker.indexOf(key);
+            return c < 0 ? null : columns[c].get(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return maker.indexOf(key) >= 0;
+        }
+
+        @Override
+        public Object put(K key, Object value) {
+            return setValue(row, columnIndex(key), value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            int c = maker.indexOf(key);
+            return c < 0 ? null : setValue(row, c, null);
+        }
+
+        @Override
+        public int size() {
+            return maker.distinctSize();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return maker.distinctSize() == 0;
+        }
+
+        @Override
+        public Set<Entry<K, Object>> entrySet() {
+            return new AbstractSet<Entry<K, Object>>() {
+
+                @Override
+                public Iterator<Entry<K, Object>> iterator() {
+                    return new Iterator<Entry<K, Object>>() {
+
+                        private int next = advance(0);
+
+                        /**
+                         * Skip the columns whose names are repeated by later columns, as the row holds each name once.
+                         */
+                        private int advance(int c) {
+                            while (c < columns.length && maker.isShadowed(c)) {
+                                c++;
+                            }
+
+                            return c;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < columns.length;
+                        }
+
+                        @Override
+                        public Entry<K, Object> next() {
+                            if (next >= columns.length) {
+                                throw new NoSuchElementException();
+                            }
+
+                            final int c = next;
+                            next = advance(next + 1);
+                            return new SimpleEntry<K, Object>(maker.getKey(c), columns[c].get(row)) {
+
+                                @Override
+                                public Object setValue(Object value) {
+                                    super.setValue(value);
+                                    return FixedMapTable.this.setValue(row, c, value);
+                                }
+                            };
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return maker.distinctSize();
+                }
+            };
+        }
+    }
+
+    private abstract static class Column {
+
+        static Column of(Class<?> type, int capacity) {
+            if (type == long.class || type == Long.class) {
+                return new LongColumn(capacity);
+            } else if (type == int.class || type == Integer.class) {
+                return new IntColumn(capacity);
+            } else if (type == double.class || type == Double.class) {
+                return new DoubleColumn(capacity);
+            } else if (type == boolean.class || type == Boolean.class) {
+                return new BooleanColumn();
+            } else {
+                return new ObjectColumn(capacity);
+            }
+        }
+
+        abstract Object get(int row);
+
+        abstract void set(int row, Object value);
+
+        abstract boolean isNull(int row);
+
+        abstract void resize(int capacity);
+
+        /**
+         * Check that a value can be stored in this column.
+         *
+         * @param value the value, which may be null
+         * @throws ClassCastException if the value is not of a type this column holds
+         */
+        void check(Object value) {
+            // Any value can be stored by default.
+        }
+
+        long getLong(int row) {
+            Object value = get(row);
+            return value == null ? 0 : ((Number) value).longValue();
+        }
+
+        double getDouble(int row) {
+            Object value = get(row);
+            return value == null ? 0 : ((Number) value).doubleValue();
+        }
+    }
+
+    /**
+     * A column of primitives, with a BitSet recording which rows are null. Rows start out null.
+     */
+    private abstract static class PrimitiveColumn extends Column {
+
+        final BitSet present = new BitSet();
+
+        @Override
+        boolean isNull(int row) {
+            return !present.get(row);
+        }
+
+        @Override
+        Object get(int row) {
+            return present.get(row) ? box(row) : null;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (value == null) {
+                present.clear(row);
+            } else {
+                unbox(row, value);
+                present.set(row);
+            }
+        }
+
+        @Override
+        void check(Object value) {
+            if (value != null && !valueType().isInstance(value)) {
+                throw new ClassCastException(String.format("%s cannot be stored in a column of %s", value.getClass().getName(),
+                        valueType().getName()));
+            }
+        }
+
+        abstract Class<?> valueType();
+
+        abstract Object box(int row);
+
+        abstract void unbox(int row, Object value);
+    }
+
+    private static class LongColumn extends PrimitiveColumn {
+
+        private long[] values;
+
+        LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        Class<?> valueType() {
+            return Number.class;
+        }
+
+        @Override
+        Object box(int row) {
+            return values[row];
+        }
+
+        @Override
+        void unbox(int row, Object value) {
+            values[row] = ((Number) value).longValue();
+        }
+
+        void setLong(int row, long value) {
+            values[row] = value;
+            present.set(row);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static class IntColumn extends PrimitiveColumn {
+
+        private int[] values;
+
+        IntColumn(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        Class<?> valueType() {
+            return Number.class;
+        }
+
+        @Override
+        Object box(int row) {
+            return values[row];
+        }
+
+        @Override
+        void unbox(int row, Object value) {
+            values[row] = ((Number) value).intValue();
+        }
+
+        void setInt(int row, int value) {
+            values[row] = value;
+            present.set(row);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static class DoubleColumn extends PrimitiveColumn {
+
+        private double[] values;
+
+        DoubleColumn(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        Class<?> valueType() {
+            return Number.class;
+        }
+
+        @Override
+        Object box(int row) {
+            return values[row];
+        }
+
+        @Override
+        void unbox(int row, Object value) {
+            values[row] = ((Number) value).doubleValue();
+        }
+
+        void setDouble(int row, double value) {
+            values[row] = value;
+            present.set(row);
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static class BooleanColumn extends PrimitiveColumn {
+
+        private final BitSet values = new BitSet();
+
+        @Override
+        Class<?> valueType() {
+            return Boolean.class;
+        }
+
+        @Override
+        Object box(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        void unbox(int row, Object value) {
+            values.set(row, (Boolean) value);
+        }
+
+        @Override
+        void resize(int capacity) {
+            // A BitSet grows as needed.
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+
+        private Object[] values;
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void set(int row, Object value) {
+            values[row] = value;
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+}
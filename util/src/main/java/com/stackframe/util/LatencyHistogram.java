@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values, typically latencies in nanoseconds. Values are counted in log-linear buckets
+ * in the style of HdrHistogram: each power of two range is split into a fixed number of linear sub-buckets, so the value reported
+ * for a percentile is within about 1.6% of the recorded value across the whole range of a long. Recording a value does not
+ * allocate.
+ *
+ * @author Gene McCulley
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKET_COUNT = (65 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_HALF) {
+            return (int) value;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < 2 * SUB_BUCKET_HALF) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long mantissa = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value the value to record; negative values are recorded as zero
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        sum.add(value);
+        long m;
+        while (value < (m = min.get()) && !min.compareAndSet(m, value)) {
+            // Retry until we have lowered the minimum or another thread has lowered it further.
+        }
+
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // Retry until we have raised the maximum or another thread has raised it further.
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return the smallest value recorded, or 0 if no values have been recorded
+     */
+    public long getMin() {
+        long m = min.get();
+        return m == Long.MAX_VALUE ? 0 : m;
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if no values have been recorded
+     */
+    public long getMax() {
+        long m = max.get();
+        return m == Long.MIN_VALUE ? 0 : m;
+    }
+
+    /**
+     * @return the arithmetic mean of the values recorded, or 0 if no values have been recorded
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Get the value at a given percentile. The value returned is the highest value that is equivalent to the recorded values at
+     * that percentile, so it never understates a latency.
+     *
+     * @param percentile the percentile to look up, from 0 to 100
+     * @return the value at the given percentile, or 0 if no values have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+
+        // Recording raced with this scan and the total was counted before all of the buckets were.
+        return getMax();
+    }
+
+    /**
+     * Clear all recorded values. Values recorded concurrently with a call to reset() may be partially lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        totalCount.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The metrics recorded by this library, such as rows loaded by SQLUtilities and time spent sending mail by MailHandler.
+ *
+ * Code that records metrics asks for a handle by name once, typically in a static field, and records to it on every operation.
+ * Until a MetricsProvider is installed, every handle does nothing, so recording costs a volatile read and an empty call.
+ * Installing a provider (through java.util.ServiceLoader or setProvider()) rebinds every handle, including those created
+ * earlier, so the order in which classes are loaded does not matter.
+ *
+ * Timers are recorded in nanoseconds. Code that has to call System.nanoTime() to time something should check isEnabled() first so
+ * that it pays nothing when metrics are off.
+ *
+ * @author mcculley
+ */
+public class Metrics {
+
+    /**
+     * A count of events.
+     */
+    public interface Counter {
+
+        /**
+         * Count one event.
+         */
+        void increment();
+
+        /**
+         * Count some events.
+         *
+         * @param n the number of events
+         */
+        void add(long n);
+    }
+
+    /**
+     * A distribution of durations.
+     */
+    public interface Timer {
+
+        /**
+         * Record a duration.
+         *
+         * @param nanos the duration, in nanoseconds
+         */
+        void record(long nanos);
+    }
+
+    /**
+     * A distribution of values, such as sizes or queue depths.
+     */
+    public interface Histogram {
+
+        /**
+         * Record a value.
+         *
+         * @param value the value
+         */
+        void record(long value);
+    }
+
+    private static final Counter noopCounter = new Counter() {
+        @Override
+        public void increment() {
+        }
+
+        @Override
+        public void add(long n) {
+        }
+    };
+
+    private static final Timer noopTimer = new Timer() {
+        @Override
+        public void record(long nanos) {
+        }
+    };
+
+    private static final Histogram noopHistogram = new Histogram() {
+        @Override
+        public void record(long value) {
+        }
+    };
+
+    private static final Map<String, CounterHandle> counters = new HashMap<>();
+    private static final Map<String, TimerHandle> timers = new HashMap<>();
+    private static final Map<String, HistogramHandle> histograms = new HashMap<>();
+    // The handle maps are guarded by the class lock.
+    private static volatile MetricsProvider provider;
+
+    static {
+        try {
+            for (MetricsProvider p : ServiceLoader.load(MetricsProvider.class)) {
+                provider = p;
+                break;
+            }
+        } catch (ServiceConfigurationError sce) {
+            // Metrics are optional, so a broken provider must not stop the library from working.
+            sce.printStackTrace(System.err);
+        }
+    }
+
+    private Metrics() {
+        // Inhibit construction as this is a utility class.
+    }
+
+    /**
+     * @return true if a MetricsProvider is installed
+     */
+    public static boolean isEnabled() {
+        return provider != null;
+    }
+
+    /**
+     * @return the installed MetricsProvider, or null if there is none
+     */
+    public static MetricsProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Install a MetricsProvider, replacing any provider found by ServiceLoader. Every handle is rebound to the new provider.
+     *
+     * @param provider the MetricsProvider to install, or null to turn metrics off
+     */
+    public static synchronized void setProvider(MetricsProvider provider) {
+        Metrics.provider = provider;
+        for (CounterHandle handle : counters.values()) {
+            handle.bind(provider);
+        }
+
+        for (TimerHandle handle : timers.values()) {
+            handle.bind(provider);
+        }
+
+        for (HistogramHandle handle : histograms.values()) {
+            handle.bind(provider);
+        }
+    }
+
+    /**
+     * Get a handle on a counter. Asking for the same name again returns the same handle.
+     *
+     * @param name the name of the counter
+     * @return a Counter that records to the installed provider, if any
+     */
+    public static synchronized Counter counter(String name) {
+        CounterHandle handle = counters.get(name);
+        if (handle == null) {
+            handle = new CounterHandle(name);
+            handle.bind(provider);
+            counters.put(name, handle);
+        }
+
+        return handle;
+    }
+
+    /**
+     * Get a handle on a timer. Asking for the same name again returns the same handle.
+     *
+     * @param name the name of the timer
+     * @return a Timer that records to the installed provider, if any
+     */
+    public static synchronized Timer timer(String name) {
+        TimerHandle handle = timers.get(name);
+        if (handle == null) {
+            handle = new TimerHandle(name);
+            handle.bind(provider);
+            timers.put(name, handle);
+        }
+
+        return handle;
+    }
+
+    /**
+     * Get a handle on a histogram. Asking for the same name again returns the same handle.
+     *
+     * @param name the name of the histogram
+     * @return a Histogram that records to the installed provider, if any
+     */
+    public static synchronized Histogram histogram(String name) {
+        HistogramHandle handle = histograms.get(name);
+        if (handle == null) {
+            handle = new HistogramHandle(name);
+            handle.bind(provider);
+            histograms.put(name, handle);
+        }
+
+        return handle;
+    }
+
+    private static final class CounterHandle implements Counter {
+
+        private final String name;
+        private volatile Counter delegate = noopCounter;
+
+        private CounterHandle(String name) {
+            this.name = name;
+        }
+
+        private void bind(MetricsProvider provider) {
+            delegate = provider == null ? noopCounter : provider.counter(name);
+        }
+
+        @Override
+        public void increment() {
+            delegate.increment();
+        }
+
+        @Override
+        public void add(long n) {
+            delegate.add(n);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class TimerHandle implements Timer {
+
+        private final String name;
+        private volatile Timer delegate = noopTimer;
+
+        private TimerHandle(String name) {
+            this.name = name;
+        }
+
+        private void bind(MetricsProvider provider) {
+            delegate = provider == null ? noopTimer : provider.timer(name);
+        }
+
+        @Override
+        public void record(long nanos) {
+            delegate.record(nanos);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class HistogramHandle implements Histogram {
+
+        private final String name;
+        private volatile Histogram delegate = noopHistogram;
+
+        private HistogramHandle(String name) {
+            this.name = name;
+        }
+
+        private void bind(MetricsProvider provider) {
+            delegate = provider == null ? noopHistogram : provider.histogram(name);
+        }
+
+        @Override
+        public void record(long value) {
+            delegate.record(value);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
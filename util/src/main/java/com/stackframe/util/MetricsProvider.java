@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+/**
+ * A service provider for the metrics recorded by this library, typically an adapter to a metrics library such as Dropwizard
+ * Metrics or Micrometer. A provider is found with java.util.ServiceLoader when Metrics is first used, or can be installed with
+ * Metrics.setProvider().
+ *
+ * Each method is called once per metric name when the provider is installed or when the metric is first used, never on a hot
+ * path, so implementations are free to look up or register metrics in a registry. The returned objects are called from many
+ * threads at once and must be thread-safe.
+ *
+ * @author mcculley
+ */
+public interface MetricsProvider {
+
+    /**
+     * @param name the name of the counter, e.g. "sql.load.rows"
+     * @return the counter to record to
+     */
+    Metrics.Counter counter(String name);
+
+    /**
+     * @param name the name of the timer, e.g. "sql.load"
+     * @return the timer to record to
+     */
+    Metrics.Timer timer(String name);
+
+    /**
+     * @param name the name of the histogram, e.g. "logging.mail.queue"
+     * @return the histogram to record to
+     */
+    Metrics.Histogram histogram(String name);
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable snapshot of the latencies recorded by a Watchdog for one operation name. All times are in nanoseconds.
+ *
+ * @author Gene McCulley
+ */
+public class OperationStatistics {
+
+    private final String name;
+    private final long count;
+    private final long overruns;
+    private final long min;
+    private final long max;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    @ConstructorProperties({"name", "count", "overruns", "min", "max", "mean", "p50", "p90", "p99", "p999"})
+    public OperationStatistics(String name, long count, long overruns, long min, long max, double mean, long p50, long p90, long p99,
+            long p999) {
+        this.name = name;
+        this.count = count;
+        this.overruns = overruns;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    static OperationStatistics of(String name, LatencyHistogram histogram, long overruns) {
+        return new OperationStatistics(name, histogram.getCount(), overruns, histogram.getMin(), histogram.getMax(),
+                histogram.getMean(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9));
+    }
+
+    /**
+     * @return the name of the operation
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of operations that have been stopped
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of operations that took longer than their expected duration
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the fraction of operations that took longer than their expected duration, from 0 to 1
+     */
+    public double getOverrunRate() {
+        return count == 0 ? 0 : (double) overruns / count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d overruns=%d min=%d mean=%.0f p50=%d p90=%d p99=%d p99.9=%d max=%d", name, count, overruns,
+                min, mean, p50, p90, p99, p999, max);
+    }
+}
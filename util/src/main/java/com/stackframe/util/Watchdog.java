@@ -1,14 +1,49 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
 package com.stackframe.util;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.Stack;
+import java.io.Closeable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 /**
  * A tool for watching over operations that might be taking longer than they should.
+ *
+ * Operations are represented by Token objects which are not tied to the thread that started them. A Token may be started on one
+ * thread and stopped on another (e.g., at the end of a CompletableFuture chain) and operations may be stopped in any order. The
+ * watchdog only holds on to operations that are in progress, so memory use does not grow with the number of threads that have
+ * used it.
+ *
+ * Every operation is also recorded in a latency histogram for its operation name, so a Watchdog doubles as lightweight
+ * instrumentation for hot paths. The statistics are available from getStatistics() and can be exposed through JMX by registering
+ * the Watchdog with an MBeanServer. Overruns of all Watchdogs are also counted by the "watchdog.overruns" counter of Metrics.
+ *
+ * A Watchdog does not have a thread of its own. Deadlines are tracked by a WatchdogScheduler, normally the shared default one, so
+ * creating a Watchdog per subsystem is cheap.
+ *
+ * @author Gene McCulley
  */
-public class Watchdog {
+public class Watchdog implements WatchdogMXBean, Closeable {
+
+    /**
+     * The operation name used for operations started without one.
+     */
+    public static final String DEFAULT_OPERATION_NAME = "default";
+
+    private static final Metrics.Counter overrunCounter = Metrics.counter("watchdog.overruns");
 
     private static final AlertAction defaultAlertAction = new AlertAction() {
         @Override
@@ -16,103 +51,198 @@ public class Watchdog {
             System.err.println("Operation took too long. Stack at creation time=");
             creationStack.printStackTrace(System.err);
         }
+
+        @Override
+        public void operationStillRunning(Throwable creationStack, int alertCount, long elapsed) {
+            System.err.println(String.format("Operation still running after %d ms (alert %d). Stack at creation time=", elapsed,
+                    alertCount));
+            creationStack.printStackTrace(System.err);
+        }
     };
 
-    private Collection<Stack<Token>> stacks = Collections.synchronizedList(new LinkedList<>());
-    private final Thread watchdogThread = new Thread(new Runnable() {
+    private final WatchdogScheduler scheduler;
+    private final long repeatInterval;
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private final LongAdder activeCount = new LongAdder();
+    private volatile boolean closed;
 
-        @Override
-        public void run() {
-            while (true) {
-                for (Stack<Token> stack : stacks) {
-                    if (!stack.isEmpty()) {
-                        Token token = stack.peek();
-                        long now = System.currentTimeMillis();
-                        if (now > token.expectedEndTime) {
-                            token.alertAction.operationTookTooLong(token.creationStack);
-                        }
-                    }
-                }
-
-                long wakeupTime = soonestWakeup();
-                long now = System.currentTimeMillis();
-                try {
-                    Thread.sleep(wakeupTime - now);
-                } catch (InterruptedException e) {
-                    // Do nothing. We expect to be interrupted. We just proceed into the loop again.
-                }
-            }
+    /**
+     * Create a Watchdog.
+     *
+     * @param scheduler the scheduler that tracks deadlines for this Watchdog
+     * @param repeatInterval how often, in milliseconds, to alert again on an operation that is still running after its first alert;
+     * 0 to only alert once
+     */
+    public Watchdog(WatchdogScheduler scheduler, long repeatInterval) {
+        if (repeatInterval < 0) {
+            throw new IllegalArgumentException("repeatInterval must not be negative");
         }
 
-        private long soonestWakeup() {
-            long soonestWakeup = Long.MAX_VALUE;
-            for (Stack<Token> stack : stacks) {
-                if (!stack.isEmpty()) {
-                    Token token = stack.peek();
-                    soonestWakeup = Long.min(token.expectedEndTime, soonestWakeup);
-                }
-            }
+        this.scheduler = scheduler;
+        this.repeatInterval = TimeUnit.MILLISECONDS.toNanos(repeatInterval);
+    }
+
+    /**
+     * Create a Watchdog that alerts once on each operation that takes too long.
+     *
+     * @param scheduler the scheduler that tracks deadlines for this Watchdog
+     */
+    public Watchdog(WatchdogScheduler scheduler) {
+        this(scheduler, 0);
+    }
 
-            return soonestWakeup;
+    /**
+     * Create a Watchdog using the default scheduler that alerts once on each operation that takes too long.
+     */
+    public Watchdog() {
+        this(WatchdogScheduler.getDefault());
+    }
+
+    private Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation == null) {
+            Operation newOperation = new Operation(name);
+            operation = operations.putIfAbsent(name, newOperation);
+            if (operation == null) {
+                operation = newOperation;
+            }
         }
-    });
 
-    private final ThreadLocal<Stack<Token>> operationStack = new ThreadLocal<Stack<Token>>() {
+        return operation;
+    }
 
-        @Override
-        public void remove() {
-            stacks.remove(get());
-            super.remove();
+    /**
+     * Start an operation.
+     *
+     * @param name the name of the operation, used to group latency statistics
+     * @param expectedDuration the expected duration of the operation, in milliseconds
+     * @param alertAction the action to take when the operation takes too long
+     * @return a token representing the operation
+     * @throws IllegalStateException if this Watchdog or its scheduler has been closed
+     */
+    public Token start(String name, long expectedDuration, AlertAction alertAction) {
+        if (closed) {
+            throw new IllegalStateException("watchdog is closed");
         }
 
-        @Override
-        protected Stack<Token> initialValue() {
-            return new Stack<>();
+        long now = System.nanoTime();
+        Token token = new Token(operation(name), now, TimeUnit.MILLISECONDS.toNanos(expectedDuration), alertAction);
+        // Count the operation before scheduling it, as a very short deadline can fire before schedule() returns.
+        activeCount.increment();
+        try {
+            scheduler.schedule(token);
+        } catch (RuntimeException e) {
+            activeCount.decrement();
+            throw e;
         }
 
-    };
+        return token;
+    }
 
-    public Watchdog() {
-        watchdogThread.setName("Watchdog");
-        watchdogThread.setPriority(Thread.MAX_PRIORITY);
-        watchdogThread.start();
+    /**
+     * Start an operation with the default alert action.
+     *
+     * @param name the name of the operation, used to group latency statistics
+     * @param expectedDuration the expected duration of the operation, in milliseconds
+     * @return a token representing the operation
+     */
+    public Token start(String name, long expectedDuration) {
+        return start(name, expectedDuration, defaultAlertAction);
     }
 
     /**
-     * Start an operation.
+     * Start an operation. Its latency is recorded under DEFAULT_OPERATION_NAME.
      *
      * @param expectedDuration the expected duration of the operation, in milliseconds
      * @param alertAction the action to take when the operation takes too long
      * @return a token representing the operation
      */
     public Token start(long expectedDuration, AlertAction alertAction) {
-        Stack<Token> stack = operationStack.get();
-        long now = System.currentTimeMillis();
-        Token token = stack.push(new Token(now + expectedDuration, alertAction));
-        watchdogThread.interrupt();
-        return token;
+        return start(DEFAULT_OPERATION_NAME, expectedDuration, alertAction);
     }
 
     /**
-     * Start an operation with the default alert action.
+     * Start an operation with the default alert action. Its latency is recorded under DEFAULT_OPERATION_NAME.
      *
      * @param expectedDuration the expected duration of the operation, in milliseconds
      * @return a token representing the operation
      */
     public Token start(long expectedDuration) {
-        return start(expectedDuration, defaultAlertAction);
+        return start(DEFAULT_OPERATION_NAME, expectedDuration, defaultAlertAction);
     }
 
     /**
-     * Stop an operation that the watchdog is watching.
+     * Stop an operation that the watchdog is watching. This may be called from any thread and operations may be stopped in any
+     * order. Stopping an operation that was still waiting on its deadline when the Watchdog was closed does nothing; an operation
+     * that had already been alerted on when the Watchdog was closed still has its latency recorded.
      *
      * @param token the Token returned by a previous call to start()
+     * @throws IllegalStateException if the operation was already stopped or was not started by this Watchdog
      */
     public void stop(Token token) {
-        Stack<Token> stack = operationStack.get();
-        Token found = stack.pop();
-        if (found != token) {
-            throw new IllegalStateException("operation not at top of stack");
+        long stopTime = System.nanoTime();
+        if (token.watchdog() != this || !scheduler.cancel(token)) {
+            if (closed && token.watchdog() == this) {
+                return;
+            }
+
+            throw new IllegalStateException("operation is not active");
+        }
+
+        activeCount.decrement();
+        token.operation.record(stopTime - token.startTime, token.expectedDuration);
+    }
+
+    /**
+     * Stop watching all operations in progress and refuse to start new ones. The scheduler is not affected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        int cancelled = scheduler.cancelAll(new Predicate<WatchdogScheduler.Alarm>() {
+            @Override
+            public boolean test(WatchdogScheduler.Alarm alarm) {
+                return alarm instanceof Token && ((Token) alarm).watchdog() == Watchdog.this;
+            }
+        });
+        activeCount.add(-cancelled);
+    }
+
+    @Override
+    public int getActiveOperationCount() {
+        return activeCount.intValue();
+    }
+
+    /**
+     * Get a snapshot of the latency statistics for each operation name. Latencies are in nanoseconds.
+     *
+     * @return a Map of operation names to statistics, sorted by name
+     */
+    @Override
+    public Map<String, OperationStatistics> getStatistics() {
+        Map<String, OperationStatistics> statistics = new TreeMap<>();
+        for (Operation operation : operations.values()) {
+            statistics.put(operation.name, operation.statistics());
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Get a snapshot of the latency statistics for an operation name.
+     *
+     * @param name the name of the operation
+     * @return the statistics, or null if no operation of that name has been started
+     */
+    public OperationStatistics getStatistics(String name) {
+        Operation operation = operations.get(name);
+        return operation == null ? null : operation.statistics();
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (Operation operation : operations.values()) {
+            operation.reset();
         }
     }
 
@@ -129,17 +259,101 @@ public class Watchdog {
          * operation.
          */
         void operationTookTooLong(Throwable creationStack);
+
+        /**
+         * This method is called each time the repeat interval of the Watchdog passes and the operation is still running. The alert
+         * count can be used to escalate (e.g., log the first few alerts and page someone after that). The default implementation
+         * calls operationTookTooLong() again.
+         *
+         * @param creationStack a Throwable captured when the operation is started
+         * @param alertCount the number of alerts raised for this operation so far, including this one; always at least 2
+         * @param elapsed the time since the operation was started, in milliseconds
+         */
+        default void operationStillRunning(Throwable creationStack, int alertCount, long elapsed) {
+            operationTookTooLong(creationStack);
+        }
     }
 
-    public class Token {
+    private static class Operation {
+
+        private final String name;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder overruns = new LongAdder();
+
+        private Operation(String name) {
+            this.name = name;
+        }
 
-        private final long expectedEndTime;
+        private void record(long duration, long expectedDuration) {
+            latencies.record(duration);
+            if (duration > expectedDuration) {
+                overruns.increment();
+                overrunCounter.increment();
+            }
+        }
+
+        private OperationStatistics statistics() {
+            return OperationStatistics.of(name, latencies, overruns.sum());
+        }
+
+        private void reset() {
+            latencies.reset();
+            overruns.reset();
+        }
+    }
+
+    /**
+     * A handle on an operation being watched. A Token can be closed to stop the operation, which makes it convenient to use in a
+     * try-with-resources statement.
+     */
+    public class Token extends WatchdogScheduler.Alarm implements AutoCloseable {
+
+        private final Operation operation;
+        private final long startTime;
+        private final long expectedDuration;
         private final AlertAction alertAction;
         private final Throwable creationStack = new Throwable();
+        private int alertCount;
 
-        private Token(long expectedEndTime, AlertAction alertAction) {
-            this.expectedEndTime = expectedEndTime;
+        private Token(Operation operation, long startTime, long expectedDuration, AlertAction alertAction) {
+            super(scheduler, startTime + expectedDuration);
+            this.operation = operation;
+            this.startTime = startTime;
+            this.expectedDuration = expectedDuration;
             this.alertAction = alertAction;
         }
+
+        private Watchdog watchdog() {
+            return Watchdog.this;
+        }
+
+        @Override
+        boolean fire(long now) {
+            if (closed || isCancelled()) {
+                return false;
+            }
+
+            alertCount++;
+            if (alertCount == 1) {
+                alertAction.operationTookTooLong(creationStack);
+            } else {
+                alertAction.operationStillRunning(creationStack, alertCount, TimeUnit.NANOSECONDS.toMillis(now - startTime));
+            }
+
+            if (repeatInterval == 0) {
+                return false;
+            }
+
+            deadline = now + repeatInterval;
+            return true;
+        }
+
+        /**
+         * Stop the operation. This is equivalent to calling stop() on the Watchdog that created this Token.
+         */
+        @Override
+        public void close() {
+            stop(this);
+        }
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.Map;
+
+/**
+ * The management interface of a Watchdog. Register a Watchdog with an MBeanServer to expose the latency statistics it gathers.
+ *
+ * @author Gene McCulley
+ */
+public interface WatchdogMXBean {
+
+    /**
+     * @return the number of operations currently in progress
+     */
+    int getActiveOperationCount();
+
+    /**
+     * @return a snapshot of the statistics for each operation name, keyed by name
+     */
+    Map<String, OperationStatistics> getStatistics();
+
+    /**
+     * Clear the statistics gathered so far.
+     */
+    void resetStatistics();
+}
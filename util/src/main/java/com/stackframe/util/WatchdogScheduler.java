@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * A single daemon timer thread that can serve any number of Watchdog objects. Deadlines are kept in System.nanoTime() terms so
+ * they are not affected by changes to the wall clock.
+ *
+ * Most code should just use the default scheduler, which is what a Watchdog created with no arguments uses. A private scheduler
+ * can be created and closed when its thread needs a bounded lifetime, such as in a container that unloads applications.
+ *
+ * @author Gene McCulley
+ */
+public class WatchdogScheduler implements Closeable {
+
+    private static class DefaultHolder {
+
+        private static final WatchdogScheduler instance = new WatchdogScheduler("Watchdog", false);
+    }
+
+    /**
+     * Something scheduled to fire at a deadline. The deadline is only changed by the scheduler thread while the Alarm is out of the
+     * set, so the set ordering stays consistent.
+     */
+    abstract static class Alarm {
+
+        private static final AtomicIntegerFieldUpdater<Alarm> cancelledUpdater
+                = AtomicIntegerFieldUpdater.newUpdater(Alarm.class, "cancelled");
+
+        private final long sequence;
+        volatile long deadline;
+        private volatile int cancelled;
+
+        Alarm(WatchdogScheduler scheduler, long deadline) {
+            this.sequence = scheduler.sequence.getAndIncrement();
+            this.deadline = deadline;
+        }
+
+        boolean isCancelled() {
+            return cancelled != 0;
+        }
+
+        /**
+         * Called on the scheduler thread when the deadline has passed.
+         *
+         * @param now the current value of System.nanoTime()
+         * @return true if the Alarm has updated its deadline and should be scheduled again
+         */
+        abstract boolean fire(long now);
+    }
+
+    private static final Comparator<Alarm> byDeadline = new Comparator<Alarm>() {
+        @Override
+        public int compare(Alarm a1, Alarm a2) {
+            // Compare by difference as System.nanoTime() values may wrap.
+            long d = a1.deadline - a2.deadline;
+            if (d != 0) {
+                return d < 0 ? -1 : 1;
+            }
+
+            return Long.compare(a1.sequence, a2.sequence);
+        }
+    };
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentSkipListSet<Alarm> alarms = new ConcurrentSkipListSet<>(byDeadline);
+    private final boolean closeable;
+    private volatile boolean closed;
+    private final Thread thread = new Thread(new Runnable() {
+
+        @Override
+        public void run() {
+            while (!closed) {
+                long now = System.nanoTime();
+                Alarm alarm;
+                while ((alarm = next(now)) != null) {
+                    boolean reschedule;
+                    try {
+                        reschedule = alarm.fire(now);
+                    } catch (Throwable t) {
+                        // Do not let a misbehaving AlertAction take down the thread that all watchdogs share.
+                        t.printStackTrace(System.err);
+                        reschedule = false;
+                    }
+
+                    if (reschedule) {
+                        alarms.add(alarm);
+                        if (alarm.isCancelled()) {
+                            alarms.remove(alarm);
+                        }
+                    }
+                }
+
+                Alarm first = first();
+                if (first == null) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, first.deadline - now);
+                }
+            }
+
+            alarms.clear();
+        }
+
+        /**
+         * Remove and return the next alarm whose deadline has passed.
+         */
+        private Alarm next(long now) {
+            Alarm alarm;
+            while ((alarm = first()) != null && alarm.deadline - now <= 0) {
+                if (alarms.remove(alarm) && !alarm.isCancelled()) {
+                    return alarm;
+                }
+            }
+
+            return null;
+        }
+    });
+
+    private WatchdogScheduler(String name, boolean closeable) {
+        this.closeable = closeable;
+        thread.setName(name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Create a new WatchdogScheduler with its own thread.
+     *
+     * @param name the name to give the scheduler thread
+     */
+    public WatchdogScheduler(String name) {
+        this(name, true);
+    }
+
+    /**
+     * Get the scheduler shared by default by all Watchdog objects. Its thread is a daemon thread that is started the first time
+     * this is called.
+     *
+     * @return the default WatchdogScheduler
+     */
+    public static WatchdogScheduler getDefault() {
+        return DefaultHolder.instance;
+    }
+
+    private Alarm first() {
+        try {
+            return alarms.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    void schedule(Alarm alarm) {
+        if (closed) {
+            throw new IllegalStateException("scheduler is closed");
+        }
+
+        alarms.add(alarm);
+        if (first() == alarm) {
+            // Only wake the thread if this alarm will fire before anything it is already waiting on.
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Cancel an Alarm. An Alarm can only be cancelled once.
+     *
+     * @return true if this call cancelled the alarm, false if it was already cancelled
+     */
+    boolean cancel(Alarm alarm) {
+        if (!Alarm.cancelledUpdater.compareAndSet(alarm, 0, 1)) {
+            return false;
+        }
+
+        alarms.remove(alarm);
+        return true;
+    }
+
+    /**
+     * Cancel every scheduled Alarm that matches a Predicate.
+     *
+     * @return the number of alarms cancelled by this call
+     */
+    int cancelAll(Predicate<Alarm> predicate) {
+        int count = 0;
+        for (Alarm alarm : alarms) {
+            if (predicate.test(alarm) && cancel(alarm)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return true if this scheduler has been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stop the scheduler thread. Operations still being watched by watchdogs using this scheduler will no longer be alerted on.
+     *
+     * @throws UnsupportedOperationException if this is the default scheduler, which is shared and cannot be closed
+     */
+    @Override
+    public void close() {
+        if (!closeable) {
+            throw new UnsupportedOperationException("the default scheduler cannot be closed");
+        }
+
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+}
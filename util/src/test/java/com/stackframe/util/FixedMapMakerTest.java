@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests for FixedMapMaker.
+ *
+ * @author Gene McCulley
+ */
+public class FixedMapMakerTest extends TestCase {
+
+    private static FixedMapMaker.FixedMap<String, Object> fill(FixedMapMaker<String> maker, Object... values) {
+        FixedMapMaker.FixedMap<String, Object> map = maker.make();
+        for (int i = 0; i < values.length; i++) {
+            map.set(i, values[i]);
+        }
+
+        return map;
+    }
+
+    public void testLookupsWithEqualKeys() {
+        String[] keys = new String[100];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+
+        FixedMapMaker<String> maker = new FixedMapMaker<>(keys);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, maker.indexOf(keys[i]));
+            assertEquals(i, maker.indexOf(new String(keys[i])));
+        }
+
+        assertEquals(-1, maker.indexOf("key100"));
+        assertEquals(-1, maker.indexOf(null));
+        assertEquals(-1, maker.indexOf(42));
+    }
+
+    public void testKeysSharingHashCodes() {
+        // "Aa" and "BB" have the same hash code, so no perfect hash exists and lookups have to probe.
+        FixedMapMaker<String> maker = new FixedMapMaker<>(new String[]{"Aa", "BB", "C", null});
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals(0, maker.indexOf("Aa"));
+        assertEquals(1, maker.indexOf("BB"));
+        assertEquals(2, maker.indexOf("C"));
+        assertEquals(3, maker.indexOf(null));
+        assertEquals(-1, maker.indexOf("D"));
+    }
+
+    public void testIteratesInDeclaredOrder() {
+        FixedMapMaker<String> maker = new FixedMapMaker<>(new String[]{"z", "a", "m"});
+        Map<String, Object> map = fill(maker, 1, 2, 3);
+        assertEquals(Arrays.asList("z", "a", "m"), new ArrayList<>(map.keySet()));
+        assertEquals(Arrays.<Object>asList(1, 2, 3), new ArrayList<>(map.values()));
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("z", 1);
+        expected.put("a", 2);
+        expected.put("m", 3);
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(map, expected);
+    }
+
+    public void testEntriesAreSharedButCopiesAreNot() {
+        FixedMapMaker<String> maker = new FixedMapMaker<>(new String[]{"a", "b"});
+        Map<String, Object> map = fill(maker, 1, 2);
+        Iterator<Map.Entry<String, Object>> i = map.entrySet().iterator();
+        Map.Entry<String, Object> first = i.next();
+        assertEquals("a", first.getKey());
+        Map.Entry<String, Object> second = i.next();
+        assertSame(first, second);
+        assertEquals("b", second.getKey());
+        assertEquals(2, second.setValue(20));
+        assertEquals(20, map.get("b"));
+
+        // Copying the entries, as new ArrayList<>(entrySet()) does, gives independent entries.
+        List<Map.Entry<String, Object>> copies = new ArrayList<>(map.entrySet());
+        assertEquals(new AbstractMap.SimpleImmutableEntry<String, Object>("a", 1), copies.get(0));
+        assertEquals(new AbstractMap.SimpleImmutableEntry<String, Object>("b", 20), copies.get(1));
+    }
+
+    public void testLastDuplicateKeyWins() {
+        // As with the column names of SELECT a.id, b.id FROM a JOIN b.
+        FixedMapMaker<String> maker = new FixedMapMaker<>(new String[]{"id", "name", "id"});
+        assertEquals(3, maker.size());
+        assertEquals(2, maker.distinctSize());
+        assertEquals(2, maker.indexOf("id"));
+        assertTrue(maker.isShadowed(0));
+        assertFalse(maker.isShadowed(1));
+        assertFalse(maker.isShadowed(2));
+
+        FixedMapMaker.FixedMap<String, Object> map = fill(maker, 1, "x", 2);
+        assertEquals(2, map.size());
+        assertEquals(2, map.get("id"));
+        assertEquals(1, map.get(0));
+        assertEquals(Arrays.asList("name", "id"), new ArrayList<>(map.keySet()));
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("id", 2);
+        expected.put("name", "x");
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        // The shadowed position does not take part in equality.
+        assertEquals(fill(maker, 99, "x", 2), map.freeze());
+        assertFalse(map.containsValue(1));
+    }
+
+    public void testFrozenMap() {
+        FixedMapMaker<String> maker = new FixedMapMaker<>(new String[]{"a", "b"});
+        FixedMapMaker.FixedMap<String, Object> map = fill(maker, 1, 2);
+        FixedMapMaker.FrozenMap<String, Object> frozen = map.freeze();
+        assertSame(frozen, map.freeze());
+        assertEquals(map, frozen);
+        assertEquals(map.hashCode(), frozen.hashCode());
+        try {
+            map.put("a", 3);
+            fail("a frozen map cannot be changed");
+        } catch (IllegalStateException expected) {
+        }
+
+        try {
+            frozen.remove("a");
+            fail("a frozen map cannot be changed");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        assertFalse(frozen.equals(fill(maker, 1, 3).freeze()));
+    }
+}
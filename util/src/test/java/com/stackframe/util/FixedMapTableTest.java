@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests for FixedMapTable.
+ *
+ * @author Gene McCulley
+ */
+public class FixedMapTableTest extends TestCase {
+
+    private FixedMapTable<String> table;
+
+    @Override
+    protected void setUp() {
+        FixedMapMaker<String> maker = new FixedMapMaker<>(new String[]{"id", "count", "price", "active", "name"});
+        table = new FixedMapTable<>(maker, long.class, int.class, double.class, boolean.class, String.class);
+    }
+
+    public void testPrimitiveColumns() {
+        table.append(Long.MAX_VALUE, 7, 2.5, true, "first");
+        table.append(Long.MIN_VALUE, Integer.MIN_VALUE, -0.5, false, "second");
+
+        assertEquals(2, table.size());
+        assertEquals(Long.MAX_VALUE, table.getLong(0, 0));
+        assertEquals(7, table.getInt(0, 1));
+        assertEquals(2.5, table.getDouble(0, 2), 0);
+        assertTrue(table.getBoolean(0, 3));
+        assertEquals("first", table.getValue(0, 4));
+
+        assertEquals(Long.MIN_VALUE, table.getLong(1, 0));
+        assertEquals(Integer.MIN_VALUE, table.getInt(1, 1));
+        assertEquals(-0.5, table.getDouble(1, 2), 0);
+        assertFalse(table.getBoolean(1, 3));
+
+        // Values are converted to the type of their column and come back boxed as that type.
+        table.append(3, 4L, 5, Boolean.TRUE, null);
+        assertEquals(3L, table.getValue(2, 0));
+        assertEquals(4, table.getValue(2, 1));
+        assertEquals(5.0, table.getValue(2, 2));
+
+        Map<String, Object> row = table.get(0);
+        assertEquals(Long.MAX_VALUE, row.get("id"));
+        assertEquals(7, row.get("count"));
+        assertEquals(5, row.size());
+
+        assertEquals(Long.MAX_VALUE + Long.MIN_VALUE + 3, table.longs(0).sum());
+        assertEquals(8.0 - 0.5 - 0.5, table.doubles(2).sum(), 0);
+    }
+
+    public void testNulls() {
+        table.append(null, null, null, null, null);
+        table.appendRow();
+
+        for (int row = 0; row < 2; row++) {
+            for (int c = 0; c < table.getColumnCount(); c++) {
+                assertTrue(table.isNull(row, c));
+                assertNull(table.getValue(row, c));
+            }
+
+            assertEquals(0, table.getLong(row, 0));
+            assertEquals(0, table.getInt(row, 1));
+            assertEquals(0.0, table.getDouble(row, 2), 0);
+            assertFalse(table.getBoolean(row, 3));
+        }
+
+        // A primitive zero is not a null.
+        table.setLong(0, 0, 0);
+        assertFalse(table.isNull(0, 0));
+        assertEquals(0L, table.getValue(0, 0));
+
+        table.setValue(0, 0, null);
+        assertTrue(table.isNull(0, 0));
+        assertNull(table.get(0).get("id"));
+        assertTrue(table.get(0).containsKey("id"));
+    }
+
+    public void testIndexLookupsAfterAppends() {
+        FixedMapTable<String>.Index byCount = table.index("count");
+        FixedMapTable<String>.Index byName = table.index("name");
+
+        table.append(1L, 10, null, null, "a");
+        table.append(2L, 20, null, null, "b");
+        table.append(3L, 10, null, null, "a");
+        table.appendRow();
+
+        assertTrue(Arrays.equals(new int[]{0, 2}, byCount.rows(10)));
+        assertTrue(Arrays.equals(new int[]{1}, byCount.rows(20)));
+        assertTrue(Arrays.equals(new int[]{3}, byCount.rows(null)));
+        assertTrue(Arrays.equals(new int[]{0, 2}, byName.rows("a")));
+        assertEquals(0, byCount.rows(30).length);
+
+        // A row whose value changes moves within the index and keeps the rows in ascending order.
+        table.setInt(1, 1, 10);
+        assertTrue(Arrays.equals(new int[]{0, 1, 2}, byCount.rows(10)));
+        assertEquals(0, byCount.rows(20).length);
+        assertFalse(byCount.values().contains(20));
+
+        table.setValue(3, 1, 10);
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3}, byCount.rows(10)));
+        assertEquals(3L, byCount.get(10).get(2).get("id"));
+
+        // An index built after the rows were appended sees the same thing.
+        FixedMapTable<String>.Index byId = table.index(0);
+        assertTrue(Arrays.equals(new int[]{2}, byId.rows(3L)));
+        assertEquals(0, byId.rows(3).length);
+    }
+
+    public void testFailedAppendLeavesTableUnchanged() {
+        FixedMapTable<String>.Index byId = table.index("id");
+        FixedMapTable<String>.Index byCount = table.index("count");
+        table.append(1L, 10, 1.0, true, "a");
+
+        try {
+            table.append(2L, "twenty", 2.0, false, "b");
+            fail("expected ClassCastException");
+        } catch (ClassCastException e) {
+            // expected
+        }
+
+        try {
+            table.append(2L, 20, 2.0, "false", "b");
+            fail("expected ClassCastException");
+        } catch (ClassCastException e) {
+            // expected
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 2L);
+        map.put("price", "cheap");
+        try {
+            table.add(map);
+            fail("expected ClassCastException");
+        } catch (ClassCastException e) {
+            // expected
+        }
+
+        assertEquals(1, table.size());
+        assertEquals(0, byId.rows(2L).length);
+        assertEquals(0, byId.rows(null).length);
+        assertEquals(0, byCount.rows(null).length);
+        assertEquals(1, byId.values().size());
+
+        // The table still takes rows after a failed append, and they land where the failed ones would have.
+        map.put("price", 2.0);
+        table.add(map);
+        assertEquals(2, table.size());
+        assertEquals(2L, table.getLong(1, 0));
+        assertTrue(table.isNull(1, 1));
+        assertTrue(Arrays.equals(new int[]{1}, byId.rows(2L)));
+        assertTrue(Arrays.equals(new int[]{1}, byCount.rows(null)));
+    }
+
+    public void testAddCopiesRows() {
+        table.append(1L, 10, 1.5, true, "a");
+        table.add(table.get(0));
+        assertEquals(table.get(0), table.get(1));
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", "b");
+        map.put("unknown", "ignored");
+        table.add(map);
+        assertEquals("b", table.get(2).get("name"));
+        assertTrue(table.isNull(2, 0));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import junit.framework.TestCase;
+
+/**
+ * Tests for WatchdogScheduler and its use by Watchdog.
+ *
+ * @author Gene McCulley
+ */
+public class WatchdogSchedulerTest extends TestCase {
+
+    private WatchdogScheduler scheduler;
+
+    @Override
+    protected void setUp() {
+        scheduler = new WatchdogScheduler("WatchdogSchedulerTest");
+    }
+
+    @Override
+    protected void tearDown() {
+        scheduler.close();
+    }
+
+    /**
+     * An alarm that reschedules itself immediately every time it fires, so the scheduler thread is almost always in the middle of
+     * taking it out of the set and putting it back.
+     */
+    private static class RepeatingAlarm extends WatchdogScheduler.Alarm {
+
+        private final AtomicInteger fires = new AtomicInteger();
+
+        RepeatingAlarm(WatchdogScheduler scheduler) {
+            super(scheduler, System.nanoTime());
+        }
+
+        @Override
+        boolean fire(long now) {
+            fires.incrementAndGet();
+            deadline = now;
+            return true;
+        }
+    }
+
+    private boolean isScheduled(final WatchdogScheduler.Alarm alarm) {
+        final boolean[] seen = new boolean[1];
+        scheduler.cancelAll(new Predicate<WatchdogScheduler.Alarm>() {
+            @Override
+            public boolean test(WatchdogScheduler.Alarm a) {
+                seen[0] |= a == alarm;
+                return false;
+            }
+        });
+        return seen[0];
+    }
+
+    public void testCancelRacingWithReschedule() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            RepeatingAlarm alarm = new RepeatingAlarm(scheduler);
+            scheduler.schedule(alarm);
+            while (alarm.fires.get() < 10) {
+                Thread.yield();
+            }
+
+            assertTrue(scheduler.cancel(alarm));
+            assertFalse("an alarm can only be cancelled once", scheduler.cancel(alarm));
+            int fires = alarm.fires.get();
+            Thread.sleep(2);
+
+            // A fire already in progress when cancel() was called may finish, but the alarm must not be put back for good.
+            assertTrue(alarm.fires.get() - fires <= 1);
+            assertFalse(isScheduled(alarm));
+        }
+    }
+
+    public void testWatchdogCountsAndRecordsOperations() throws InterruptedException {
+        final AtomicInteger alerts = new AtomicInteger();
+        Watchdog watchdog = new Watchdog(scheduler);
+        Watchdog.AlertAction action = new Watchdog.AlertAction() {
+            @Override
+            public void operationTookTooLong(Throwable creationStack) {
+                alerts.incrementAndGet();
+            }
+        };
+        Watchdog.Token fast = watchdog.start("fast", 60000, action);
+        Watchdog.Token slow = watchdog.start("slow", 0, action);
+        assertEquals(2, watchdog.getActiveOperationCount());
+        while (alerts.get() == 0) {
+            Thread.sleep(1);
+        }
+
+        fast.close();
+        slow.close();
+        assertEquals(0, watchdog.getActiveOperationCount());
+        assertEquals(1, alerts.get());
+        assertEquals(1, watchdog.getStatistics("slow").getOverruns());
+        assertEquals(0, watchdog.getStatistics("fast").getOverruns());
+        try {
+            fast.close();
+            fail("stopping twice should fail");
+        } catch (IllegalStateException expected) {
+        }
+
+        watchdog.close();
+    }
+}
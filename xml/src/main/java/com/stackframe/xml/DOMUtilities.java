@@ -16,7 +16,17 @@ import com.google.common.collect.Iterables;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -27,18 +37,195 @@ import java.util.stream.StreamSupport;
  */
 public class DOMUtilities {
 
+    /**
+     * The maximum number of compiled expressions cached for each thread.
+     */
+    private static final int MAX_CACHED_EXPRESSIONS = 256;
+
+    /**
+     * XPath and XPathExpression objects are not thread-safe, so each thread gets its own XPath and its own cache of compiled
+     * expressions, with the least recently used expressions evicted.
+     */
+    private static final ThreadLocal<XPathCache> xpathCache = new ThreadLocal<XPathCache>() {
+        @Override
+        protected XPathCache initialValue() {
+            return new XPathCache();
+        }
+    };
+
+    private static class XPathCache {
+
+        private final XPath xpath = XPathFactory.newInstance().newXPath();
+        private final Map<String, XPathExpression> expressions = new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                return size() > MAX_CACHED_EXPRESSIONS;
+            }
+        };
+
+        XPathExpression compile(String expression) throws XPathExpressionException {
+            XPathExpression compiled = expressions.get(expression);
+            if (compiled == null) {
+                compiled = xpath.compile(expression);
+                expressions.put(expression, compiled);
+            }
+
+            return compiled;
+        }
+    }
+
     private DOMUtilities() {
         // Inhibit construction as this is a utility class.
     }
 
     /**
-     * Convert a nodelist to a Stream.
+     * Compile an XPath expression, using a cached compilation if this thread has compiled the same expression before. The returned
+     * XPathExpression must only be used by the calling thread.
+     *
+     * @param expression the XPath expression
+     * @return the compiled expression
+     * @throws XPathExpressionException if expression is not a valid XPath expression
+     */
+    public static XPathExpression compile(String expression) throws XPathExpressionException {
+        return xpathCache.get().compile(expression);
+    }
+
+    /**
+     * Evaluate an XPath expression that selects a set of nodes. The expression is compiled once per thread and cached.
+     *
+     * @param node the context node, such as a Document
+     * @param expression the XPath expression
+     * @return the selected nodes
+     * @throws XPathExpressionException if expression is not valid or does not evaluate to a node set
+     */
+    public static NodeList nodeList(Node node, String expression) throws XPathExpressionException {
+        return (NodeList) compile(expression).evaluate(node, XPathConstants.NODESET);
+    }
+
+    /**
+     * Evaluate an XPath expression and get a view of the selected nodes as an Iterable.
+     *
+     * @param node the context node, such as a Document
+     * @param expression the XPath expression
+     * @return an Iterable over the selected nodes
+     * @throws XPathExpressionException if expression is not valid or does not evaluate to a node set
+     */
+    public static Iterable<Node> iterable(Node node, String expression) throws XPathExpressionException {
+        return iterable(nodeList(node, expression));
+    }
+
+    /**
+     * Evaluate an XPath expression and get the values of the selected nodes.
+     *
+     * @param node the context node, such as a Document
+     * @param expression the XPath expression, typically ending in text() or an attribute
+     * @return an Iterable of the values
+     * @throws XPathExpressionException if expression is not valid or does not evaluate to a node set
+     */
+    public static Iterable<String> values(Node node, String expression) throws XPathExpressionException {
+        return values(nodeList(node, expression));
+    }
+
+    /**
+     * Evaluate an XPath expression and stream the values of the selected nodes.
+     *
+     * @param node the context node, such as a Document
+     * @param expression the XPath expression, typically ending in text() or an attribute
+     * @param parallel True to create a parallel stream
+     * @return a Stream of the values
+     * @throws XPathExpressionException if expression is not valid or does not evaluate to a node set
+     */
+    public static Stream<String> stream(Node node, String expression, boolean parallel) throws XPathExpressionException {
+        return stream(nodeList(node, expression), parallel);
+    }
+
+    /**
+     * Convert a nodelist to a Stream. For documents too large to parse into a DOM, StAXUtilities.values() streams the same kind of
+     * values straight from the input.
+     *
+     * DOM implementations are generally not safe for concurrent reads (e.g., Xerces builds the contents of some NodeLists lazily),
+     * so a parallel stream reads the node values into an array on the calling thread first and then splits that array evenly.
+     *
      * @param nl The list
      * @param parallel True to create a parallel stream
      * @return The stream
      */
     public static  Stream<String> stream(NodeList nl, boolean parallel) {
-        return StreamSupport.stream(values(nl).spliterator(), parallel);
+        if (parallel) {
+            int length = nl.getLength();
+            String[] values = new String[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = nl.item(i).getNodeValue();
+            }
+
+            return Arrays.stream(values).parallel();
+        }
+
+        return StreamSupport.stream(spliterator(nl), false).map(Node::getNodeValue);
+    }
+
+    /**
+     * Get a view of a NodeList as a Spliterator. The Spliterator knows its exact size and splits by index range.
+     *
+     * @param nodeList the NodeList to split
+     * @return a Spliterator over nodeList
+     */
+    public static Spliterator<Node> spliterator(NodeList nodeList) {
+        return new NodeListSpliterator(nodeList, 0, nodeList.getLength());
+    }
+
+    private static final class NodeListSpliterator implements Spliterator<Node> {
+
+        private final NodeList nodeList;
+        private int index;
+        private final int fence;
+
+        private NodeListSpliterator(NodeList nodeList, int index, int fence) {
+            this.nodeList = nodeList;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Node> action) {
+            if (index >= fence) {
+                return false;
+            }
+
+            action.accept(nodeList.item(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Node> action) {
+            for (int i = index; i < fence; i++) {
+                action.accept(nodeList.item(i));
+            }
+
+            index = fence;
+        }
+
+        @Override
+        public Spliterator<Node> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+
+            Spliterator<Node> prefix = new NodeListSpliterator(nodeList, index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
     }
 
     /**
@@ -64,11 +251,12 @@ public class DOMUtilities {
      */
     public static Iterator<Node> iterator(final NodeList nodeList) {
         return new AbstractIterator<Node>() {
+            private final int length = nodeList.getLength();
             private int index;
 
             @Override
             protected Node computeNext() {
-                if (index == nodeList.getLength()) {
+                if (index == length) {
                     return endOfData();
                 }
 
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.xml;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses many XML files in parallel and streams out values extracted from each of them.
+ *
+ * Each worker thread keeps its own DocumentBuilder, so parsers are created once per thread rather than once per file. Files are
+ * parsed only as fast as the stream is consumed: no more than the configured parallelism are being parsed at a time and no more
+ * than that many parsed results are waiting to be consumed, so the number of documents in memory stays bounded however many files
+ * there are. Each Document is dropped as soon as its values have been extracted.
+ *
+ * Values are delivered file by file, in the order the files finish parsing rather than the order they were supplied.
+ *
+ * @author mcculley
+ */
+public class DocumentPipeline implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int parallelism;
+    private final DocumentBuilderFactory factory;
+    private final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                // DocumentBuilderFactory is not guaranteed to be thread-safe.
+                synchronized (factory) {
+                    return factory.newDocumentBuilder();
+                }
+            } catch (ParserConfigurationException pce) {
+                throw new AssertionError(pce);
+            }
+        }
+    };
+
+    private DocumentPipeline(ExecutorService executor, boolean ownsExecutor, int parallelism, DocumentBuilderFactory factory) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.parallelism = parallelism;
+        this.factory = factory;
+    }
+
+    /**
+     * Create a DocumentPipeline that runs on a caller-supplied executor. The executor is not shut down when the pipeline is closed.
+     *
+     * @param executor the executor to parse files on
+     * @param parallelism the maximum number of files to parse at a time
+     * @param factory the factory to create parsers with
+     */
+    public DocumentPipeline(ExecutorService executor, int parallelism, DocumentBuilderFactory factory) {
+        this(executor, false, parallelism, factory);
+    }
+
+    /**
+     * Create a DocumentPipeline with its own pool of daemon threads. Files are parsed with secure processing enabled and doctype
+     * declarations rejected, so no external entity or DTD is ever fetched. To parse files that need a DTD, supply a factory to the
+     * other constructor.
+     *
+     * @param parallelism the number of threads, which is also the maximum number of files to parse at a time
+     */
+    public DocumentPipeline(int parallelism) {
+        this(Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DocumentPipeline-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true, parallelism, secureFactory());
+    }
+
+    private static DocumentBuilderFactory secureFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException pce) {
+            throw new AssertionError(pce);
+        }
+
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        return factory;
+    }
+
+    /**
+     * Create a DocumentPipeline with its own pool of daemon threads, one per available processor.
+     */
+    public DocumentPipeline() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    private Document parse(Path file) throws IOException, SAXException {
+        DocumentBuilder builder = builders.get();
+        try (InputStream in = Files.newInputStream(file)) {
+            return builder.parse(in, file.toUri().toString());
+        } finally {
+            builder.reset();
+        }
+    }
+
+    /**
+     * Parse files and stream the values of the nodes selected from each of them, as with DOMUtilities.values().
+     *
+     * @param files the files to parse
+     * @param extractor a Function that selects nodes from a parsed Document; it is called on the worker threads
+     * @return a lazy Stream of the values; closing it cancels any parsing still in progress
+     */
+    public Stream<String> values(Iterable<Path> files, final Function<Document, NodeList> extractor) {
+        final ValueSpliterator spliterator = new ValueSpliterator(files.iterator(), extractor);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                spliterator.cancel();
+            }
+        });
+    }
+
+    /**
+     * Parse files and stream the values of the nodes selected from each of them by an XPath expression. The expression is compiled
+     * once per worker thread.
+     *
+     * @param files the files to parse
+     * @param expression an XPath expression that selects a node set, typically ending in text() or an attribute
+     * @return a lazy Stream of the values; closing it cancels any parsing still in progress
+     */
+    public Stream<String> values(Iterable<Path> files, final String expression) {
+        return values(files, new Function<Document, NodeList>() {
+            @Override
+            public NodeList apply(Document document) {
+                try {
+                    return DOMUtilities.nodeList(document, expression);
+                } catch (XPathExpressionException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Shut down the threads of this pipeline, if it created them.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    private final class ValueSpliterator extends Spliterators.AbstractSpliterator<String> {
+
+        private final Iterator<Path> files;
+        private final Function<Document, NodeList> extractor;
+        private final CompletionService<List<String>> completion = new ExecutorCompletionService<>(executor);
+        private final Set<Future<List<String>>> pending = new HashSet<>();
+        private Iterator<String> batch = Collections.emptyIterator();
+
+        ValueSpliterator(Iterator<Path> files, Function<Document, NodeList> extractor) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+            this.files = files;
+            this.extractor = extractor;
+        }
+
+        private void fill() {
+            while (pending.size() < parallelism && files.hasNext()) {
+                final Path file = files.next();
+                pending.add(completion.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws Exception {
+                        Document document = parse(file);
+                        List<String> values = new ArrayList<>();
+                        for (String value : DOMUtilities.values(extractor.apply(document))) {
+                            if (value != null) {
+                                values.add(value);
+                            }
+                        }
+
+                        return values;
+                    }
+                }));
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            while (!batch.hasNext()) {
+                fill();
+                if (pending.isEmpty()) {
+                    return false;
+                }
+
+                try {
+                    Future<List<String>> done = completion.take();
+                    pending.remove(done);
+                    batch = done.get().iterator();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    throw new RuntimeException(ie);
+                } catch (ExecutionException ee) {
+                    cancel();
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof IOException) {
+                        throw new UncheckedIOException((IOException) cause);
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw new RuntimeException(cause);
+                    }
+                }
+
+                // Start the next files while the consumer works through this batch.
+                fill();
+            }
+
+            action.accept(batch.next());
+            return true;
+        }
+
+        void cancel() {
+            for (Future<List<String>> future : pending) {
+                future.cancel(true);
+            }
+
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.xml;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Utilities for pulling values out of XML documents with a streaming (StAX) parser. Unlike the DOMUtilities views, these do not
+ * need the whole document in memory, so they can be used on documents of any size. Memory use is bounded by the depth of the
+ * document and the size of the largest matched element.
+ *
+ * Elements are selected with a simple path expression: element names separated by '/', where '//' matches any number of
+ * intervening elements and '*' matches any element name. A path may end in an attribute step such as '@id'. For example,
+ * "/feed/entry/title", "//entry/@id" and "/feed/*&#47;name" are all valid paths. Names are matched against the local name of an
+ * element unless the step contains a prefix, in which case it is matched against the prefixed name.
+ *
+ * The returned streams are lazy and sequential. They should be closed when no longer needed (e.g., with try-with-resources) to
+ * release the parser; the InputStream is not closed.
+ *
+ * @author mcculley
+ */
+public class StAXUtilities {
+
+    private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        }
+    };
+
+    private StAXUtilities() {
+        // Inhibit construction as this is a utility class.
+    }
+
+    /**
+     * Stream the values selected by a path. For an element path, the value is the text content of each matched element, including
+     * the text of its descendants. For an attribute path, the value is the value of the attribute on each matched element that
+     * has it. Matches nested inside an element that is already matched are not reported separately.
+     *
+     * @param in the XML document
+     * @param path the path expression
+     * @return a lazy Stream of the values in document order
+     * @throws XMLStreamException if the parser cannot be created
+     * @throws IllegalArgumentException if the path is not valid
+     */
+    public static Stream<String> values(InputStream in, String path) throws XMLStreamException {
+        Path p = Path.parse(path);
+        XMLStreamReader reader = inputFactory.get().createXMLStreamReader(in);
+        return stream(new ValueExtractor(reader, p), reader);
+    }
+
+    /**
+     * Stream the elements selected by a path as DOM fragments. Each Element is the root of its own small Document, so the
+     * fragments can be garbage collected independently. Matches nested inside an element that is already matched are not reported
+     * separately.
+     *
+     * @param in the XML document
+     * @param path the path expression, which must not end in an attribute step
+     * @return a lazy Stream of the elements in document order
+     * @throws XMLStreamException if the parser cannot be created
+     * @throws IllegalArgumentException if the path is not valid
+     */
+    public static Stream<Element> elements(InputStream in, String path) throws XMLStreamException {
+        Path p = Path.parse(path);
+        if (p.attribute != null) {
+            throw new IllegalArgumentException("an element path may not select an attribute: " + path);
+        }
+
+        DocumentBuilder builder;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            builder = factory.newDocumentBuilder();
+        } catch (ParserConfigurationException pce) {
+            throw new AssertionError(pce);
+        }
+
+        XMLStreamReader reader = inputFactory.get().createXMLStreamReader(in);
+        return stream(new ElementExtractor(reader, p, builder), reader);
+    }
+
+    private static <T> Stream<T> stream(Spliterator<T> spliterator, final XMLStreamReader reader) {
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        String localName = reader.getLocalName();
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    /**
+     * A parsed path expression.
+     */
+    private static class Path {
+
+        private final String[] names;
+        private final boolean[] descendant;
+        private final String attribute;
+
+        private Path(String[] names, boolean[] descendant, String attribute) {
+            this.names = names;
+            this.descendant = descendant;
+            this.attribute = attribute;
+        }
+
+        static Path parse(String path) {
+            if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("path must start with '/': " + path);
+            }
+
+            List<String> names = new ArrayList<>();
+            List<Boolean> descendant = new ArrayList<>();
+            String attribute = null;
+            int i = 0;
+            int length = path.length();
+            while (i < length) {
+                boolean anyDepth = path.startsWith("//", i);
+                i += anyDepth ? 2 : 1;
+                int end = path.indexOf('/', i);
+                if (end < 0) {
+                    end = length;
+                }
+
+                String name = path.substring(i, end);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("empty step in path: " + path);
+                }
+
+                if (name.startsWith("@")) {
+                    if (end != length || anyDepth || names.isEmpty()) {
+                        throw new IllegalArgumentException("an attribute may only be the last step of a path: " + path);
+                    }
+
+                    attribute = name.substring(1);
+                } else {
+                    names.add(name);
+                    descendant.add(anyDepth);
+                }
+
+                i = end;
+            }
+
+            if (names.isEmpty()) {
+                throw new IllegalArgumentException("path selects no elements: " + path);
+            }
+
+            boolean[] d = new boolean[descendant.size()];
+            for (int j = 0; j < d.length; j++) {
+                d[j] = descendant.get(j);
+            }
+
+            return new Path(names.toArray(new String[names.size()]), d, attribute);
+        }
+
+        private boolean nameMatches(int step, String localName, String qualifiedName) {
+            String name = names[step];
+            if (name.equals("*")) {
+                return true;
+            }
+
+            return name.indexOf(':') < 0 ? name.equals(localName) : name.equals(qualifiedName);
+        }
+
+        /**
+         * Determine if the open elements match this path, with the last step on the innermost element.
+         */
+        boolean matches(List<String> localNames, List<String> qualifiedNames) {
+            int depth = localNames.size();
+            if (depth < names.length) {
+                return false;
+            }
+
+            if (descendant[0]) {
+                for (int e = 0; e < depth; e++) {
+                    if (matches(0, e, localNames, qualifiedNames)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            return matches(0, 0, localNames, qualifiedNames);
+        }
+
+        private boolean matches(int step, int element, List<String> localNames, List<String> qualifiedNames) {
+            if (!nameMatches(step, localNames.get(element), qualifiedNames.get(element))) {
+                return false;
+            }
+
+            int depth = localNames.size();
+            if (step == names.length - 1) {
+                return element == depth - 1;
+            }
+
+            if (descendant[step + 1]) {
+                for (int e = element + 1; e < depth; e++) {
+                    if (matches(step + 1, e, localNames, qualifiedNames)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            return element + 1 < depth && matches(step + 1, element + 1, localNames, qualifiedNames);
+        }
+    }
+
+    /**
+     * Pulls events from the reader and hands each matched element to a subclass, one match per call to tryAdvance().
+     */
+    private abstract static class Extractor<T> extends Spliterators.AbstractSpliterator<T> {
+
+        final XMLStreamReader reader;
+        final Path path;
+        private final List<String> localNames = new ArrayList<>();
+        private final List<String> qualifiedNames = new ArrayList<>();
+
+        Extractor(XMLStreamReader reader, Path path) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.reader = reader;
+            this.path = path;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        localNames.add(reader.getLocalName());
+                        qualifiedNames.add(qualifiedName(reader));
+                        if (path.matches(localNames, qualifiedNames)) {
+                            T t = extract();
+                            if (t != null) {
+                                action.accept(t);
+                                return true;
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        pop();
+                    }
+                }
+
+                return false;
+            } catch (XMLStreamException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void pop() {
+            int last = localNames.size() - 1;
+            localNames.remove(last);
+            qualifiedNames.remove(last);
+        }
+
+        /**
+         * Called with the reader on the START_ELEMENT of a matched element. An implementation that reads the rest of the element
+         * must leave the reader on its END_ELEMENT and call pop().
+         *
+         * @return the extracted value, or null if there is nothing to report for this element
+         */
+        abstract T extract() throws XMLStreamException;
+    }
+
+    private static class ValueExtractor extends Extractor<String> {
+
+        ValueExtractor(XMLStreamReader reader, Path path) {
+            super(reader, path);
+        }
+
+        @Override
+        String extract() throws XMLStreamException {
+            if (path.attribute != null) {
+                return path.attribute.indexOf(':') < 0 ? reader.getAttributeValue(null, path.attribute) : prefixedAttribute();
+            }
+
+            StringBuilder text = new StringBuilder();
+            int depth = 1;
+            while (depth > 0) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            pop();
+            return text.toString();
+        }
+
+        private String prefixedAttribute() {
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String name = prefix == null || prefix.isEmpty() ? reader.getAttributeLocalName(i)
+                        : prefix + ':' + reader.getAttributeLocalName(i);
+                if (name.equals(path.attribute)) {
+                    return reader.getAttributeValue(i);
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static class ElementExtractor extends Extractor<Element> {
+
+        private final DocumentBuilder builder;
+
+        ElementExtractor(XMLStreamReader reader, Path path, DocumentBuilder builder) {
+            super(reader, path);
+            this.builder = builder;
+        }
+
+        private Element startElement(Document document) {
+            Element element = document.createElementNS(reader.getNamespaceURI(), qualifiedName(reader));
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                String name = prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix;
+                element.setAttributeNS("http://www.w3.org/2000/xmlns/", name, reader.getNamespaceURI(i));
+            }
+
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String localName = reader.getAttributeLocalName(i);
+                String name = prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+                String namespace = reader.getAttributeNamespace(i);
+                element.setAttributeNS(namespace == null || namespace.isEmpty() ? null : namespace, name, reader.getAttributeValue(i));
+            }
+
+            return element;
+        }
+
+        @Override
+        Element extract() throws XMLStreamException {
+            Document document = builder.newDocument();
+            Element root = startElement(document);
+            document.appendChild(root);
+            Node current = root;
+            while (current != null) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        Element child = startElement(document);
+                        current.appendChild(child);
+                        current = child;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        current = current == root ? null : current.getParentNode();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        current.appendChild(document.createTextNode(reader.getText()));
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        current.appendChild(document.createCDATASection(reader.getText()));
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        current.appendChild(document.createComment(reader.getText()));
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        current.appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            pop();
+            return root;
+        }
+    }
+}
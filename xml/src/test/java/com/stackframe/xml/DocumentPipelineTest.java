@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 StackFrame, LLC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3
+ * as published by the Free Software Foundation.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stackframe.xml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests for DocumentPipeline.
+ *
+ * @author mcculley
+ */
+public class DocumentPipelineTest extends TestCase {
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("DocumentPipelineTest");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(directory);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void testValues() throws IOException {
+        Path a = write("a.xml", "<items><item>1</item><item>2</item></items>");
+        Path b = write("b.xml", "<items><item>3</item></items>");
+        try (DocumentPipeline pipeline = new DocumentPipeline(2);
+                Stream<String> values = pipeline.values(Arrays.asList(a, b), "/items/item/text()")) {
+            List<String> sorted = values.sorted().collect(Collectors.toList());
+            assertEquals(Arrays.asList("1", "2", "3"), sorted);
+        }
+    }
+
+    public void testDefaultFactoryRejectsExternalEntities() throws IOException {
+        Path secret = write("secret.txt", "secret");
+        Path file = write("xxe.xml", "<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE items [<!ENTITY secret SYSTEM \"" + secret.toUri() + "\">]>\n"
+                + "<items><item>&secret;</item></items>");
+        try (DocumentPipeline pipeline = new DocumentPipeline(1);
+                Stream<String> values = pipeline.values(Collections.singletonList(file), "/items/item/text()")) {
+            values.collect(Collectors.toList());
+            fail("expected the doctype to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof SAXParseException);
+        }
+    }
+}